@@ -0,0 +1,157 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*
+   한 줄에 수식 하나씩 들어 있는 파일을 계산해 결과를 다른 파일에 쓴다.
+   입력은 메모리 매핑으로 읽고, BLOCK 크기씩 줄 단위로 나눈 묶음을
+   여러 스레드가 나누어 계산한다. 결과는 묶음을 넣은 순서대로 꺼내
+   큰 버퍼를 거쳐 FileChannel 로 쓰므로 출력 순서는 입력과 같다.
+
+   줄마다 새 EvaluationContext 로 계산한다(줄끼리 변수를 공유하지 않음).
+   오류가 난 줄은 "Error: " 와 오류 메시지를 쓰고 다음 줄을 계속 계산한다
+   (사용자 함수가 던진 예외나 StackOverflowError 도 그 줄의 오류로 씀).
+*/
+final class BatchEvaluator {
+    private static final int WINDOW = 1 << 28;      // 한 번에 매핑할 최대 크기(256MB)
+    private static final int BLOCK = 1 << 20;       // 작업 하나가 맡는 입력 크기(1MB)
+    private static final int OUT_BUFFER = 1 << 22;  // 출력 버퍼 크기(4MB)
+
+    private final Parser parser;
+    private final ExecutorService pool;
+    private final int maxPending;   // 결과를 기다리는 묶음 수 제한(메모리 사용량 제한)
+
+    BatchEvaluator(Parser parser, ExecutorService pool, int maxPending) {
+        this.parser = parser;
+        this.pool = pool;
+        this.maxPending = maxPending;
+    }
+
+    // in 의 모든 줄을 계산해 out 에 쓰고 처리한 줄 수를 반환
+    long run(Path in, Path out) throws IOException {
+        try(FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+            FileChannel output = FileChannel.open(out, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+            ByteBuffer buf = ByteBuffer.allocateDirect(OUT_BUFFER);
+            long size = input.size(), pos = 0, lines = 0;
+
+            while(pos < size) {
+                long len = Math.min(WINDOW, size - pos);
+                MappedByteBuffer map = input.map(FileChannel.MapMode.READ_ONLY, pos, len);
+
+                // 매핑 범위 끝에 걸친 줄은 다음 매핑에서 처리
+                int end = (int) len;
+                if(pos + len < size) {
+                    end = lineStart(map, 0, end, true);
+                    if(end == 0)
+                        throw new IOException("line at offset " + pos + " is longer than " + WINDOW + " bytes");
+                }
+
+                for(int from = 0; from < end; ) {
+                    int to = from + BLOCK < end ? lineStart(map, from + BLOCK, end, false) : end;
+                    int start = from;
+                    pending.add(pool.submit(() -> evaluate(map, start, to)));
+                    from = to;
+                    while(pending.size() >= maxPending)
+                        lines += write(pending.poll(), output, buf);
+                }
+                pos += end;
+            }
+            while(!pending.isEmpty())
+                lines += write(pending.poll(), output, buf);
+
+            buf.flip();
+            while(buf.hasRemaining()) output.write(buf);
+            return lines;
+        }
+    }
+
+    /* 다음 줄의 시작 위치. backward 이면 end 앞쪽에서 찾고(없으면 0),
+       아니면 from 뒤쪽에서 찾는다(없으면 end). */
+    private static int lineStart(ByteBuffer map, int from, int end, boolean backward) {
+        if(backward) {
+            for(int i = end - 1; i >= 0; i--)
+                if(map.get(i) == '\n') return i + 1;
+            return 0;
+        }
+        for(int i = from; i < end; i++)
+            if(map.get(i) == '\n') return i + 1;
+        return end;
+    }
+
+    // 계산이 끝난 묶음
+    private static final class Block {
+        final byte[] output;
+        final int lines;
+
+        Block(byte[] output, int lines) {
+            this.output = output;
+            this.lines = lines;
+        }
+    }
+
+    // [from, to) 범위의 줄을 계산
+    private Block evaluate(ByteBuffer map, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        map.get(from, bytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+
+        StringBuilder sb = new StringBuilder(bytes.length + 64);
+        int lines = 0;
+        for(int i = 0; i < text.length(); ) {
+            int nl = text.indexOf('\n', i);
+            int next = nl < 0 ? text.length() : nl + 1;
+            int e = nl < 0 ? text.length() : nl;
+            if(e > i && text.charAt(e - 1) == '\r') e--;    // CRLF
+
+            // 잘못된 줄이 많아도 예외를 던지지 않도록 tryEvaluate 사용
+            try {
+                EvalResult r = parser.tryEvaluate(text.substring(i, e), parser.newContext());
+                if(r.isError()) sb.append("Error: ").append(r.getMessage());
+                else sb.append(r.getValue());
+            } catch(RuntimeException | StackOverflowError exc) {
+                sb.append("Error: ").append(exc);   // 사용자 함수의 예외도 그 줄의 오류로
+            }
+            sb.append('\n');
+            lines++;
+            i = next;
+        }
+        return new Block(sb.toString().getBytes(StandardCharsets.UTF_8), lines);
+    }
+
+    // 묶음 결과를 기다려 출력 버퍼에 씀
+    private static int write(Future<Block> f, FileChannel output, ByteBuffer buf) throws IOException {
+        Block b;
+        try {
+            b = f.get();
+        } catch(InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", exc);
+        } catch(ExecutionException exc) {
+            throw new IOException("evaluation failed", exc.getCause());
+        }
+
+        if(b.output.length > buf.remaining()) {
+            buf.flip();
+            while(buf.hasRemaining()) output.write(buf);
+            buf.clear();
+        }
+        if(b.output.length > buf.capacity()) {
+            ByteBuffer big = ByteBuffer.wrap(b.output);
+            while(big.hasRemaining()) output.write(big);
+        }
+        else buf.put(b.output);
+        return b.lines;
+    }
+}
@@ -0,0 +1,86 @@
+package com.company;
+
+/*
+   믿을 수 없는 입력을 계산할 때의 자원 제한.
+   Parser.evaluate(expstr, ctx, budget)로 계산하면 제한을 넘는 순간
+   "Evaluation budget exceeded"(Parser.BUDGET) 오류가 난다. 문자열 길이만은
+   원래의 "String result too long"(Parser.TOOLONG) 오류가 난다.
+
+     maxOperations    수식 트리의 노드(연산, 상수, 변수) 수
+     maxStringLength  +, * 로 만드는 문자열 결과의 길이
+     maxDepth         트리 깊이(괄호 중첩, 긴 연산 체인. 스택 넘침 방지)
+     maxMillis        계산 시간(0 이면 제한 없음)
+   제한 안에서는 정확한 거듭제곱(EvaluationContext.setExactPowers)을 쓰지 않는다.
+
+   이 언어에는 반복문이 없어 각 노드는 한 번만 계산되므로 연산 수와
+   깊이는 계산 전에 트리만 보고 검사한다(트리 크기는 수식마다 한 번만 셈).
+   캐시에 없는 수식은 재귀하지 않는 파서로 먼저 크기를 재므로 재귀 파서도 안전하다.
+   하나의 연산은 문자열 길이 제한과 O(log n) 거듭제곱으로 이미 작으므로
+   시간은 노드 TIME_CHECK 개마다 한 번씩만 확인한다.
+*/
+final class Budget {
+    static final int TIME_CHECK = 256;   // 시간을 확인하는 노드 간격
+
+    final int maxOperations;
+    final int maxStringLength;
+    final int maxDepth;
+    final long maxNanos;
+
+    Budget(int maxOperations, int maxStringLength, int maxDepth, long maxMillis) {
+        if(maxOperations <= 0 || maxStringLength < 0 || maxDepth <= 0 || maxMillis < 0)
+            throw new IllegalArgumentException("invalid budget");
+        this.maxOperations = maxOperations;
+        this.maxStringLength = maxStringLength;
+        this.maxDepth = maxDepth;
+        this.maxNanos = Math.min(maxMillis, Long.MAX_VALUE / 4_000_000) * 1_000_000;
+    }
+
+    // 평범한 수식에는 충분하고 악의적인 수식은 곧바로 막는 값
+    static Budget standard() {
+        return new Budget(10_000, 64 * 1024, 256, 100);
+    }
+
+    /* 트리를 만들기 전에 재귀 없는 파서(RpnCompiler)로 노드 수와 깊이 검사.
+       재귀 하강 파서와 Optimizer 가 아주 깊거나 긴 수식에서 스택을 넘치지 않게 한다.
+       파싱 오류는 compile()과 같은 오류로 던진다. */
+    void checkSource(String expstr, Parser parser) throws ParserException {
+        // 괄호만 있는 중첩((((1))))은 트리 깊이에 나타나지 않으므로 따로 셈.
+        // 문자열 안의 괄호도 세므로 실제보다 크거나 같다
+        int parens = 0;
+        for(int i = 0; i < expstr.length(); i++) {
+            char c = expstr.charAt(i);
+            if(c == '(' && ++parens > maxDepth)
+                Parser.handleErr(Parser.BUDGET, i);
+            else if(c == ')' && parens > 0)
+                parens--;
+        }
+
+        RpnExpression r = parser.compileIterative(expstr);
+        if(r.size() > maxOperations || r.depth() > maxDepth)
+            Parser.handleErr(Parser.BUDGET);
+    }
+
+    // 계산 전에 트리 크기와 깊이 검사
+    void checkTree(Expression e) throws ParserException {
+        if(e.size() > maxOperations || e.depth() > maxDepth)
+            Parser.handleErr(Parser.BUDGET);
+    }
+
+    // 계산 중 시간 확인용 상태
+    static final class Meter {
+        private final long deadline;
+        private int countdown = TIME_CHECK;
+
+        Meter(Budget b) {
+            deadline = b.maxNanos == 0 ? Long.MAX_VALUE : System.nanoTime() + b.maxNanos;
+        }
+
+        void tick() throws ParserException {
+            if(--countdown == 0) {
+                countdown = TIME_CHECK;
+                if(deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0)
+                    Parser.handleErr(Parser.BUDGET);
+            }
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package com.company;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+   숫자 수식을 JVM 바이트코드로 컴파일한다.
+   수식 트리를 NumericFunction.apply(double[]) 하나로 펼친 클래스 파일을
+   만들고 hidden class 로 정의하므로, JIT가 직접 작성한 자바 코드처럼
+   인라인, 최적화할 수 있다. hidden class 는 강한 참조 없이 정의되므로
+   반환된 함수에 대한 참조가 사라지면 클래스도 언로드된다.
+
+   0으로 나누기와 ^ 는 인터프리터와 같은 Operators 메소드를 호출하므로
+   결과와 오류가 동일하다. 문자열 상수가 있는 수식은 컴파일할 수 없다.
+
+   함수 호출은 함수의 MethodHandle 을 hidden class 의 class data 로 넘기고,
+   호출 위치마다 동적 상수(ldc)로 꺼내 invokeExact 한다. 핸들이 상수이므로
+   JIT 는 호출 위치마다 해당 함수를 직접 인라인한다.
+
+   compile(Expression[])은 여러 수식을 apply(vars, out) 하나로 펼친다.
+   모양이 같은 부분 식은 같은 노드로 합친 뒤, 두 번 이상 쓰이는 연산은
+   처음 계산할 때 지역 변수에 저장하고 다음부터는 읽기만 한다.
+   분기가 없는 코드이므로 처음 계산하는 곳이 항상 먼저 실행된다.
+
+   메소드 코드(64KB)나 상수 풀(65535 항목) 한도를 넘는 수식, 코드 생성이
+   스택을 넘칠 만큼 깊거나 피연산자 스택이 MAX_STACK 보다 깊은 수식은
+   같은 값을 트리 계산으로 내는 함수를 반환한다.
+*/
+final class BytecodeCompiler {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    // 클래스 파일 이름(hidden class 는 정의 시 고유한 접미사가 붙음)
+    private static final String CLASS_NAME = "com/company/CompiledExpression";
+    private static final String OPERATORS = "com/company/Operators";
+
+    // 사용하는 JVM 명령
+    private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c;
+    private static final int DLOAD = 0x18, DSTORE = 0x39, DUP2 = 0x5c, WIDE = 0xc4;
+    private static final int DCONST_0 = 0x0e, DCONST_1 = 0x0f;
+    private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int DALOAD = 0x31, DASTORE = 0x52, DUP2_X2 = 0x5e;
+    private static final int DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DREM = 0x73, DNEG = 0x77;
+    private static final int DRETURN = 0xaf, RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+    // 동적 상수로 class data 의 i 번째 핸들을 꺼내는 부트스트랩 메소드
+    private static final String CLASS_DATA_AT = "(Ljava/lang/invoke/MethodHandles$Lookup;"
+            + "Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;";
+    private static final int REF_INVOKESTATIC = 6;
+
+    // 클래스 파일 한도
+    private static final int MAX_CODE = 65535;      // 메소드 코드 바이트 수
+    private static final int MAX_U2 = 0xFFFF;       // 상수 풀 항목 수, 지역 변수 슬롯 수
+    // 피연산자 스택 슬롯 수. 스택이 크면 apply() 호출 프레임도 커져 스레드 스택을 넘칠 수 있다
+    private static final int MAX_STACK = 1024;
+
+    private BytecodeCompiler() {}
+
+    // 수식을 컴파일한 함수 인스턴스 반환
+    static NumericFunction compile(Expression e) throws ParserException {
+        Object f = define(new ClassFile(new Node[] { e.getRoot() }, false));
+        return f != null ? (NumericFunction) f : interpreted(e);
+    }
+
+    /* 여러 수식을 한 번에 계산해 out[i] 에 i 번째 수식의 값을 쓰는 함수.
+       수식은 순서대로 계산하며, 수식 사이에 같은 부분 식은 한 번만 계산한다.
+       모든 수식은 같은 Parser 로 만든 것이어야 한다. */
+    static VectorFunction compile(Expression[] exprs) throws ParserException {
+        Node[] roots = new Node[exprs.length];
+        for(int i = 0; i < roots.length; i++) roots[i] = exprs[i].getRoot();
+        Object f = define(new ClassFile(canonical(roots), true));
+        return f != null ? (VectorFunction) f : interpreted(exprs);
+    }
+
+    // 클래스를 정의해 인스턴스를 반환(클래스 파일 한도를 넘으면 null)
+    private static Object define(ClassFile cf) throws ParserException {
+        byte[] bytes;
+        try {
+            bytes = cf.toBytes();
+        } catch(TooLarge | StackOverflowError err) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClassWithClassData(bytes, cf.handles, true);
+            return hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch(RuntimeException | Error exc) {
+            throw exc;
+        } catch(Throwable exc) {
+            throw new IllegalStateException("cannot define compiled expression", exc);
+        }
+    }
+
+    // 트리 계산으로 값을 내는 함수. 바이트코드와 같이 문자열이 있는 수식은 받지 않는다
+    private static NumericFunction interpreted(Expression e) throws ParserException {
+        checkNumeric(e.getRoot());
+        Node root = e.getRoot();
+        SymbolTable symbols = e.getSymbols();
+        return vars -> {
+            double result = e.value(context(symbols, vars)).num();
+            if(root.kind == Node.ASSIGN)
+                vars[root.slot] = result;
+            return result;
+        };
+    }
+
+    private static VectorFunction interpreted(Expression[] exprs) throws ParserException {
+        for(Expression e : exprs) checkNumeric(e.getRoot());
+        SymbolTable symbols = exprs[0].getSymbols();
+        return (vars, out) -> {
+            EvaluationContext ctx = context(symbols, vars);
+            for(int i = 0; i < exprs.length; i++) {
+                out[i] = exprs[i].value(ctx).num();
+                Node root = exprs[i].getRoot();
+                if(root.kind == Node.ASSIGN)
+                    vars[root.slot] = out[i];
+            }
+        };
+    }
+
+    private static EvaluationContext context(SymbolTable symbols, double[] vars) {
+        EvaluationContext ctx = new EvaluationContext(symbols);
+        for(int i = 0; i < vars.length; i++) ctx.set(i, vars[i]);
+        return ctx;
+    }
+
+    // 문자열 상수나 문자열 함수가 있으면 OPERATOR 오류(재귀하지 않음)
+    private static void checkNumeric(Node root) throws ParserException {
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while(!nodes.isEmpty()) {
+            Node n = nodes.pop();
+            if(n.kind == Node.CONST && !n.value.isNumber() || n.kind == Node.CALL && !n.fn.isNumeric())
+                Parser.handleErr(Parser.OPERATOR);
+            if(n.left != null) nodes.push(n.left);
+            if(n.right != null) nodes.push(n.right);
+            if(n.args != null)
+                for(Node a : n.args) nodes.push(a);
+        }
+    }
+
+    /* 모양이 같은 부분 식(같은 연산, 같은 피연산자)을 같은 노드 객체로 바꾼 트리들.
+       순수하지 않은 함수 호출과 할당은 합치지 않는다. 재귀하지 않고 자식부터 바꾼다. */
+    private static Node[] canonical(Node[] roots) {
+        IdentityHashMap<Node, Node> canon = new IdentityHashMap<>();
+        HashMap<List<Object>, Node> table = new HashMap<>();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        for(Node root : roots) {
+            stack.push(root);
+            while(!stack.isEmpty()) {
+                Node n = stack.peek();
+                if(canon.containsKey(n)) {
+                    stack.pop();
+                    continue;
+                }
+                int pending = stack.size();
+                if(n.left != null && !canon.containsKey(n.left)) stack.push(n.left);
+                if(n.right != null && !canon.containsKey(n.right)) stack.push(n.right);
+                if(n.args != null)
+                    for(Node a : n.args)
+                        if(!canon.containsKey(a)) stack.push(a);
+                if(stack.size() > pending) continue;    // 자식을 먼저
+
+                stack.pop();
+                canon.put(n, share(n, canon, table));
+            }
+        }
+        Node[] out = new Node[roots.length];
+        for(int i = 0; i < out.length; i++) out[i] = canon.get(roots[i]);
+        return out;
+    }
+
+    // 자식이 모두 바뀐 노드 n 의 대표 노드
+    private static Node share(Node n, Map<Node, Node> canon, Map<List<Object>, Node> table) {
+        Node l = n.left == null ? null : canon.get(n.left);
+        Node r = n.right == null ? null : canon.get(n.right);
+        Node[] args = null;
+        boolean same = l == n.left && r == n.right;
+        if(n.args != null) {
+            args = new Node[n.args.length];
+            for(int i = 0; i < args.length; i++) {
+                args[i] = canon.get(n.args[i]);
+                same &= args[i] == n.args[i];
+            }
+        }
+
+        Node c;
+        if(same) c = n;
+        else if(n.kind == Node.ASSIGN) c = Node.assign(n.slot, n.name, l);
+        else if(n.kind == Node.NEG) c = Node.neg(l);
+        else if(n.kind == Node.CALL) c = Node.call(n.fn, args);
+        else c = Node.binary(n.op, l, r);
+
+        List<Object> key;
+        switch(n.kind) {
+            case Node.CONST:
+                key = Arrays.asList(Node.CONST, n.value.isNumber()
+                        ? (Object) Double.doubleToRawLongBits(n.value.num()) : n.value.toString());
+                break;
+            case Node.VAR:
+                key = Arrays.asList(Node.VAR, n.slot);
+                break;
+            case Node.NEG:
+                key = Arrays.asList(Node.NEG, l);
+                break;
+            case Node.BINARY:
+                key = Arrays.asList(Node.BINARY, n.op, l, r);
+                break;
+            case Node.CALL:
+                if(!n.fn.pure) return c;
+                key = Arrays.asList(Node.CALL, n.fn, Arrays.asList(args));
+                break;
+            default:    // ASSIGN
+                return c;
+        }
+        Node found = table.putIfAbsent(key, c);
+        return found != null ? found : c;
+    }
+
+    // 클래스 파일 한도를 넘음(compile()이 트리 계산 함수로 대신함)
+    private static final class TooLarge extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TooLarge() {
+            super(null, null, false, false);
+        }
+    }
+
+    // 수식(vector 이면 여러 수식)에 대한 클래스 파일
+    private static final class ClassFile {
+        private final ConstantPool pool = new ConstantPool();
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final Node[] roots;
+        private final boolean vector;   // VectorFunction.apply(double[], double[]) 이면 true
+        private int maxStack;
+        private int maxLocals;
+
+        // 두 번 이상 쓰이는 연산 노드의 지역 변수 번호와 이미 저장한 노드
+        private final Map<Node, Integer> locals = new IdentityHashMap<>();
+        private final Set<Node> stored = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // 호출하는 함수의 핸들(class data)과 그 번호
+        final List<MethodHandle> handles = new ArrayList<>();
+        private final Map<FunctionRegistry.Entry, Integer> handleIndex = new IdentityHashMap<>();
+
+        ClassFile(Node[] roots, boolean vector) {
+            this.roots = roots;
+            this.vector = vector;
+            this.maxLocals = vector ? 3 : 2;    // this, vars(, out)
+            if(vector) assignLocals();
+        }
+
+        // 여러 번 쓰이는 연산 노드(NEG, BINARY, CALL)에 지역 변수를 붙임(double 은 두 칸)
+        private void assignLocals() {
+            IdentityHashMap<Node, Integer> uses = new IdentityHashMap<>();
+            ArrayDeque<Node> nodes = new ArrayDeque<>();
+            for(Node r : roots)
+                if(uses.merge(r, 1, Integer::sum) == 1) nodes.push(r);
+            while(!nodes.isEmpty()) {
+                Node n = nodes.pop();
+                if(n.kind == Node.ASSIGN)   // 저장한 값이 할당 뒤에 낡을 수 있으므로 공유하지 않음
+                    return;
+                if(n.left != null && uses.merge(n.left, 1, Integer::sum) == 1) nodes.push(n.left);
+                if(n.right != null && uses.merge(n.right, 1, Integer::sum) == 1) nodes.push(n.right);
+                if(n.args != null)
+                    for(Node a : n.args)
+                        if(uses.merge(a, 1, Integer::sum) == 1) nodes.push(a);
+            }
+            for(Map.Entry<Node, Integer> u : uses.entrySet()) {
+                Node n = u.getKey();
+                if(u.getValue() > 1 && (n.kind == Node.NEG || n.kind == Node.BINARY || n.kind == Node.CALL)) {
+                    locals.put(n, maxLocals);
+                    maxLocals += 2;
+                }
+            }
+        }
+
+        byte[] toBytes() throws ParserException {
+            // 본문을 먼저 만들어야 상수 풀이 완성됨
+            if(vector) {
+                // out[i] = i 번째 수식
+                for(int i = 0; i < roots.length; i++) {
+                    code.write(ALOAD_2);
+                    pushInt(i);
+                    emit(roots[i], 2);
+                    code.write(DASTORE);
+                }
+                code.write(RETURN);
+            }
+            else {
+                emit(roots[0], 0);
+                code.write(DRETURN);
+            }
+            byte[] apply = code.toByteArray();
+            if(apply.length > MAX_CODE || maxStack > MAX_STACK || maxLocals > MAX_U2)
+                throw new TooLarge();
+
+            code.reset();
+            code.write(ALOAD_0);
+            code.write(INVOKESPECIAL);
+            u2(code, pool.method("java/lang/Object", "<init>", "()V"));
+            code.write(RETURN);
+            byte[] init = code.toByteArray();
+
+            int thisClass = pool.classRef(CLASS_NAME);
+            int superClass = pool.classRef("java/lang/Object");
+            int iface = pool.classRef(vector ? "com/company/VectorFunction" : "com/company/NumericFunction");
+            int initName = pool.utf8("<init>"), initDesc = pool.utf8("()V");
+            int applyName = pool.utf8("apply"), applyDesc = pool.utf8(vector ? "([D[D)V" : "([D)D");
+            int codeAttr = pool.utf8("Code");
+            int bsmAttr = handles.isEmpty() ? 0 : pool.utf8("BootstrapMethods");
+            int bsm = handles.isEmpty() ? 0 : pool.methodHandle(REF_INVOKESTATIC,
+                    pool.method("java/lang/invoke/MethodHandles", "classDataAt", CLASS_DATA_AT));
+            int[] bsmArgs = new int[handles.size()];
+            for(int i = 0; i < bsmArgs.length; i++) bsmArgs[i] = pool.intConst(i);
+
+            try {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(buf);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);          // minor version
+                out.writeShort(55);         // major version(동적 상수는 55부터, 분기가 없으므로 StackMapTable 불필요)
+                pool.write(out);
+                out.writeShort(0x0030);     // ACC_FINAL | ACC_SUPER
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(iface);
+                out.writeShort(0);          // 필드 없음
+                out.writeShort(2);          // 메소드 2개
+                method(out, 0x0001, initName, initDesc, codeAttr, 1, 1, init);
+                method(out, 0x0011, applyName, applyDesc, codeAttr, maxStack, maxLocals, apply);
+                if(handles.isEmpty())
+                    out.writeShort(0);      // 클래스 속성 없음
+                else {
+                    // 핸들 i 번은 부트스트랩 메소드 i 번(classDataAt(..., i))으로 꺼냄
+                    out.writeShort(1);
+                    out.writeShort(bsmAttr);
+                    out.writeInt(2 + 6 * bsmArgs.length);
+                    out.writeShort(bsmArgs.length);
+                    for(int arg : bsmArgs) {
+                        out.writeShort(bsm);
+                        out.writeShort(1);
+                        out.writeShort(arg);
+                    }
+                }
+                return buf.toByteArray();
+            } catch(IOException exc) {
+                throw new IllegalStateException(exc);
+            }
+        }
+
+        private static void method(DataOutputStream out, int flags, int name, int desc, int codeAttr,
+                                   int maxStack, int maxLocals, byte[] body) throws IOException {
+            out.writeShort(flags);
+            out.writeShort(name);
+            out.writeShort(desc);
+            out.writeShort(1);
+            out.writeShort(codeAttr);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);  // 예외 테이블 없음
+            out.writeShort(0);  // 코드 속성 없음
+        }
+
+        // 노드 값을 스택에 올리는 코드 생성. depth 는 현재 스택 깊이(슬롯 수)
+        private void emit(Node n, int depth) throws ParserException {
+            if(code.size() > MAX_CODE)     // 더 만들어도 쓸 수 없음
+                throw new TooLarge();
+            Integer local = locals.get(n);
+            if(local == null)
+                emitNode(n, depth);
+            else if(stored.contains(n)) {
+                localOp(DLOAD, local);
+                stack(depth + 2);
+            }
+            else {
+                // 처음 계산할 때 값을 지역 변수에도 저장
+                emitNode(n, depth);
+                code.write(DUP2);
+                localOp(DSTORE, local);
+                stack(depth + 4);
+                stored.add(n);
+            }
+        }
+
+        private void emitNode(Node n, int depth) throws ParserException {
+            switch(n.kind) {
+                case Node.CONST:
+                    if(!n.value.isNumber())    // 문자열은 컴파일 불가
+                        Parser.handleErr(Parser.OPERATOR);
+                    pushDouble(n.value.num());
+                    stack(depth + 2);
+                    break;
+                case Node.VAR:
+                    code.write(ALOAD_1);
+                    pushInt(n.slot);
+                    code.write(DALOAD);
+                    stack(depth + 2);
+                    break;
+                case Node.ASSIGN:
+                    // vars[slot] = 값 을 저장하고 값은 스택에 남김
+                    code.write(ALOAD_1);
+                    pushInt(n.slot);
+                    emit(n.left, depth + 2);
+                    code.write(DUP2_X2);
+                    code.write(DASTORE);
+                    stack(depth + 6);
+                    break;
+                case Node.NEG:
+                    emit(n.left, depth);
+                    code.write(DNEG);
+                    break;
+                case Node.CALL: {
+                    if(!n.fn.isNumeric())      // 문자열을 다루는 함수는 컴파일 불가
+                        Parser.handleErr(Parser.OPERATOR);
+                    // 핸들을 스택에 올린 뒤 인자를 계산해 invokeExact
+                    code.write(LDC_W);
+                    u2(code, pool.dynamic(handle(n.fn), "_", "Ljava/lang/invoke/MethodHandle;"));
+                    StringBuilder desc = new StringBuilder("(");
+                    for(int i = 0; i < n.args.length; i++) {
+                        emit(n.args[i], depth + 1 + 2 * i);
+                        desc.append('D');
+                    }
+                    code.write(INVOKEVIRTUAL);
+                    u2(code, pool.method("java/lang/invoke/MethodHandle", "invokeExact", desc.append(")D").toString()));
+                    stack(depth + 2);
+                    break;
+                }
+                default:
+                    if(n.op == '^')
+                        emitPowChain(n, depth);
+                    else if(n.left.kind == Node.BINARY && n.left.op != '^')
+                        emitChain(n, depth);
+                    else {
+                        emit(n.left, depth);
+                        emit(n.right, depth + 2);
+                        emitOp(n.op);
+                    }
+                    break;
+            }
+        }
+
+        // 왼쪽 자식으로 이어지는 a+b-c... 체인은 재귀하지 않고 맨 왼쪽부터 계산
+        private void emitChain(Node n, int depth) throws ParserException {
+            ArrayList<Node> chain = new ArrayList<>();
+            Node t = n;
+            for(; t.kind == Node.BINARY && t.op != '^' && (t == n || !locals.containsKey(t)); t = t.left)
+                chain.add(t);
+
+            emit(t, depth);
+            for(int i = chain.size() - 1; i >= 0; i--) {
+                emit(chain.get(i).right, depth + 2);
+                emitOp(chain.get(i).op);
+            }
+        }
+
+        // 오른쪽으로 이어지는 a^b^c... 체인은 밑을 모두 올린 뒤 오른쪽부터 거듭제곱
+        private void emitPowChain(Node n, int depth) throws ParserException {
+            int len = 0;
+            Node t = n;
+            for(; t.kind == Node.BINARY && t.op == '^' && (t == n || !locals.containsKey(t)); t = t.right, len++)
+                emit(t.left, depth + 2 * len);
+            emit(t, depth + 2 * len);
+            for(int i = 0; i < len; i++)
+                emitOp('^');
+        }
+
+        private void emitOp(char op) {
+            switch(op) {
+                case '+': code.write(DADD); break;
+                case '-': code.write(DSUB); break;
+                case '*': code.write(DMUL); break;
+                case '/':
+                    invokeOperators("checkDivisor", "(D)D");
+                    code.write(DDIV);
+                    break;
+                case '%':
+                    invokeOperators("checkDivisor", "(D)D");
+                    code.write(DREM);
+                    break;
+                default:
+                    invokeOperators("pow", "(DD)D");
+                    break;
+            }
+        }
+
+        // 함수 핸들의 class data 번호(같은 함수는 한 번만 넣음)
+        private int handle(FunctionRegistry.Entry fn) {
+            Integer i = handleIndex.get(fn);
+            if(i == null) {
+                i = handles.size();
+                handles.add(fn.handle);
+                handleIndex.put(fn, i);
+            }
+            return i;
+        }
+
+        private void invokeOperators(String name, String desc) {
+            code.write(INVOKESTATIC);
+            u2(code, pool.method(OPERATORS, name, desc));
+        }
+
+        // 지역 변수 읽기, 쓰기(번호가 255 보다 크면 wide)
+        private void localOp(int op, int index) {
+            if(index <= 255) {
+                code.write(op);
+                code.write(index);
+            }
+            else {
+                code.write(WIDE);
+                code.write(op);
+                u2(code, index);
+            }
+        }
+
+        private void pushDouble(double d) {
+            if(Double.doubleToRawLongBits(d) == 0L) code.write(DCONST_0);
+            else if(d == 1.0) code.write(DCONST_1);
+            else {
+                code.write(LDC2_W);
+                u2(code, pool.doubleConst(d));
+            }
+        }
+
+        private void pushInt(int i) {
+            if(i <= 5) code.write(ICONST_0 + i);
+            else if(i <= Byte.MAX_VALUE) { code.write(BIPUSH); code.write(i); }
+            else if(i <= Short.MAX_VALUE) { code.write(SIPUSH); u2(code, i); }
+            else { code.write(LDC_W); u2(code, pool.intConst(i)); }
+        }
+
+        private void stack(int depth) {
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        private static void u2(ByteArrayOutputStream out, int v) {
+            if(v > MAX_U2)
+                throw new TooLarge();
+            out.write(v >>> 8);
+            out.write(v);
+        }
+    }
+
+    // 클래스 파일 상수 풀
+    private static final class ConstantPool {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<byte[]> entries = new ArrayList<>();
+        private int count = 1;  // 0번 항목은 사용하지 않음
+
+        int utf8(String s) {
+            return add("U" + s, 1, out -> out.writeUTF(s), 1);
+        }
+
+        int classRef(String name) {
+            int n = utf8(name);
+            return add("C" + name, 7, out -> out.writeShort(n), 1);
+        }
+
+        int method(String owner, String name, String desc) {
+            int c = classRef(owner);
+            int nt = nameAndType(name, desc);
+            return add("M" + owner + "." + name + desc, 10, out -> { out.writeShort(c); out.writeShort(nt); }, 1);
+        }
+
+        int nameAndType(String name, String desc) {
+            int nm = utf8(name), d = utf8(desc);
+            return add("N" + name + desc, 12, out -> { out.writeShort(nm); out.writeShort(d); }, 1);
+        }
+
+        int methodHandle(int kind, int ref) {
+            return add("H" + kind + ":" + ref, 15, out -> { out.writeByte(kind); out.writeShort(ref); }, 1);
+        }
+
+        // 동적 상수(bsm 은 BootstrapMethods 속성의 번호)
+        int dynamic(int bsm, String name, String desc) {
+            int nt = nameAndType(name, desc);
+            return add("Y" + bsm + ":" + name + desc, 17, out -> { out.writeShort(bsm); out.writeShort(nt); }, 1);
+        }
+
+        int intConst(int i) {
+            return add("I" + i, 3, out -> out.writeInt(i), 1);
+        }
+
+        int doubleConst(double d) {
+            long bits = Double.doubleToRawLongBits(d);
+            return add("D" + bits, 6, out -> out.writeLong(bits), 2);  // double 은 두 칸 차지
+        }
+
+        private interface Body {
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        private int add(String key, int tag, Body body, int slots) {
+            Integer i = index.get(key);
+            if(i != null) return i;
+            if(count + slots > MAX_U2)     // 항목 번호는 count - 1 까지
+                throw new TooLarge();
+            try {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(buf);
+                out.writeByte(tag);
+                body.write(out);
+                entries.add(buf.toByteArray());
+            } catch(IOException exc) {
+                throw new IllegalStateException(exc);
+            }
+            int idx = count;
+            count += slots;
+            index.put(key, idx);
+            return idx;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeShort(count);
+            for(byte[] e : entries) out.write(e);
+        }
+    }
+}
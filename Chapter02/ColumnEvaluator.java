@@ -0,0 +1,244 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/*
+   하나의 숫자 수식을 열(column) 단위로 계산한다.
+   변수마다 double[] 한 열을 묶어 주면 행마다 evaluate()를 부르지 않고
+   수식 트리를 후위 순서의 명령 배열로 바꾼 뒤, 명령 하나씩 CHUNK 행을
+   한꺼번에 처리한다. 명령별 반복문은 단순한 배열 연산이라 JIT가
+   SIMD 명령으로 벡터화할 수 있다. 행 범위는 ForkJoinPool 로 나누어
+   병렬로 계산한다.
+*/
+final class ColumnEvaluator {
+    private static final int CHUNK = 1024;           // 한 번에 처리할 행 수
+    private static final int SPLIT_ROWS = 32 * CHUNK; // 작업을 더 나누지 않는 크기
+
+    // 명령 종류
+    private static final int CONST = 0;
+    private static final int VAR = 1;
+    private static final int NEG = 2;
+    private static final int ADD = 3;
+    private static final int SUB = 4;
+    private static final int MUL = 5;
+    private static final int DIV = 6;
+    private static final int MOD = 7;
+    private static final int POW = 8;
+    private static final int CALL1 = 9;   // 인자 하나인 함수
+    private static final int CALL2 = 10;  // 인자 둘인 함수
+
+    // 명령 i 의 결과는 레지스터 i 에 저장된다
+    private final int[] code;       // 명령 종류
+    private final int[] left;       // 피연산자 레지스터(VAR 는 변수 슬롯)
+    private final int[] right;
+    private final double[] consts;  // CONST 값
+    private final FunctionRegistry.Entry[] fns;  // CALL 함수
+    private final SymbolTable symbols;
+    private int size;
+
+    ColumnEvaluator(Expression e) throws ParserException {
+        int n = count(e.getRoot());
+        symbols = e.getSymbols();
+        code = new int[n];
+        left = new int[n];
+        right = new int[n];
+        consts = new double[n];
+        fns = new FunctionRegistry.Entry[n];
+        emit(e.getRoot());
+    }
+
+    private static int count(Node n) {
+        if(n.kind == Node.ASSIGN) return count(n.left);
+        if(n.kind == Node.CALL) {
+            int c = 1;
+            for(Node a : n.args) c += count(a);
+            return c;
+        }
+        return 1 + (n.left != null ? count(n.left) : 0) + (n.right != null ? count(n.right) : 0);
+    }
+
+    // 수식 트리를 후위 순서 명령으로 변환하고 결과 레지스터를 반환
+    private int emit(Node n) throws ParserException {
+        int l = -1, r = -1, op;
+        switch(n.kind) {
+            case Node.CONST:
+                if(!n.value.isNumber())    // 문자열은 열 단위 계산 불가
+                    Parser.handleErr(Parser.OPERATOR);
+                consts[size] = n.value.num();
+                op = CONST;
+                break;
+            case Node.VAR:
+                l = n.slot;
+                op = VAR;
+                break;
+            case Node.ASSIGN:     // 할당은 오른쪽 식의 값만 계산
+                return emit(n.left);
+            case Node.NEG:
+                l = emit(n.left);
+                op = NEG;
+                break;
+            case Node.CALL:
+                // 인자가 한두 개인 숫자 함수만 열 단위로 계산 가능
+                if(!n.fn.isNumeric() || n.args.length > 2 || n.args.length == 0)
+                    Parser.handleErr(Parser.OPERATOR);
+                l = emit(n.args[0]);
+                if(n.args.length == 2) r = emit(n.args[1]);
+                fns[size] = n.fn;
+                op = n.args.length == 1 ? CALL1 : CALL2;
+                break;
+            default:
+                l = emit(n.left);
+                r = emit(n.right);
+                op = "+-*/%^".indexOf(n.op) + ADD;
+                break;
+        }
+        code[size] = op;
+        left[size] = l;
+        right[size] = r;
+        return size++;
+    }
+
+    // 변수 이름별 열을 묶어 계산. 모든 열은 길이가 같아야 한다.
+    double[] evaluate(Map<String, double[]> columns) throws ParserException {
+        int rows = -1;
+        for(double[] c : columns.values()) {
+            if(rows == -1) rows = c.length;
+            else if(rows != c.length)
+                throw new IllegalArgumentException("columns have different lengths");
+        }
+        if(rows == -1)
+            throw new IllegalArgumentException("no columns");
+        return evaluate(rows, columns, ForkJoinPool.commonPool());
+    }
+
+    double[] evaluate(int rows, Map<String, double[]> columns, ForkJoinPool pool) throws ParserException {
+        double[][] vars = new double[symbols.size()][];
+        for(Map.Entry<String, double[]> c : columns.entrySet()) {
+            if(c.getValue().length < rows)
+                throw new IllegalArgumentException("column " + c.getKey() + " is shorter than " + rows);
+            int slot = symbols.find(c.getKey());
+            if(slot >= 0)   // 수식에 없는 이름의 열은 쓰지 않음
+                vars[slot] = c.getValue();
+        }
+
+        double[] out = new double[rows];
+        try {
+            pool.invoke(new Task(vars, out, 0, rows));
+        } catch(RuntimeException exc) {
+            // 작업 중 발생한 계산 오류를 꺼냄
+            for(Throwable t = exc; t != null; t = t.getCause())
+                if(t instanceof ParserException) throw (ParserException) t;
+            throw exc;
+        }
+        return out;
+    }
+
+    // 행 범위 [from, to) 를 계산하는 작업
+    private final class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] vars;
+        private final double[] out;
+        private final int from, to;
+
+        Task(double[][] vars, double[] out, int from, int to) {
+            this.vars = vars;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if(to - from > SPLIT_ROWS) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Task(vars, out, from, mid), new Task(vars, out, mid, to));
+                return;
+            }
+            try {
+                run(vars, out, from, to);
+            } catch(ParserException exc) {
+                throw new EvaluationFailure(exc);
+            }
+        }
+    }
+
+    // ForkJoin 작업 밖으로 ParserException 을 전달하기 위한 예외
+    private static final class EvaluationFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        EvaluationFailure(ParserException cause) {
+            super(cause);
+        }
+    }
+
+    private void run(double[][] vars, double[] out, int from, int to) throws ParserException {
+        double[][] reg = new double[size][CHUNK];
+        for(int i = 0; i < size; i++)
+            if(code[i] == CONST) Arrays.fill(reg[i], consts[i]);
+
+        for(int base = from; base < to; base += CHUNK) {
+            int n = Math.min(CHUNK, to - base);
+            for(int i = 0; i < size; i++) {
+                double[] d = reg[i];
+                double[] x = left[i] >= 0 && code[i] != VAR ? reg[left[i]] : null;
+                double[] y = right[i] >= 0 ? reg[right[i]] : null;
+                switch(code[i]) {
+                    case CONST:
+                        break;
+                    case VAR: {
+                        double[] col = vars[left[i]];
+                        if(col != null) System.arraycopy(col, base, d, 0, n);
+                        else Arrays.fill(d, 0, n, 0.0);  // 할당되지 않은 변수는 0
+                        break;
+                    }
+                    case NEG:
+                        for(int k = 0; k < n; k++) d[k] = -x[k];
+                        break;
+                    case ADD:
+                        for(int k = 0; k < n; k++) d[k] = x[k] + y[k];
+                        break;
+                    case SUB:
+                        for(int k = 0; k < n; k++) d[k] = x[k] - y[k];
+                        break;
+                    case MUL:
+                        for(int k = 0; k < n; k++) d[k] = x[k] * y[k];
+                        break;
+                    case DIV:
+                        checkDivisor(y, n);
+                        for(int k = 0; k < n; k++) d[k] = x[k] / y[k];
+                        break;
+                    case MOD:
+                        checkDivisor(y, n);
+                        for(int k = 0; k < n; k++) d[k] = x[k] % y[k];
+                        break;
+                    case POW:
+                        for(int k = 0; k < n; k++) d[k] = Operators.pow(x[k], y[k]);
+                        break;
+                    case CALL1: {
+                        DoubleUnaryOperator f = fns[i].unary;
+                        for(int k = 0; k < n; k++) d[k] = f.applyAsDouble(x[k]);
+                        break;
+                    }
+                    default: {
+                        DoubleBinaryOperator f = fns[i].binary;
+                        for(int k = 0; k < n; k++) d[k] = f.applyAsDouble(x[k], y[k]);
+                        break;
+                    }
+                }
+            }
+            System.arraycopy(reg[size - 1], 0, out, base, n);
+        }
+    }
+
+    private static void checkDivisor(double[] y, int n) throws ParserException {
+        boolean zero = false;
+        for(int k = 0; k < n; k++) zero |= y[k] == 0.0;
+        if(zero)
+            Parser.handleErr(Parser.DIVBYZERO);
+    }
+}
@@ -0,0 +1,211 @@
+package com.company;
+
+/*
+   숫자 수식의 변수에 대한 편도함수를 기호로 구한다.
+   결과는 보통의 Expression 이므로 evaluate()나 toNumericFunction()으로
+   같은 방법으로 계산할 수 있다.
+
+   미분 규칙
+     x' = 1, 다른 변수와 상수 = 0
+     (a ± b)' = a' ± b',  (a * b)' = a'b + ab',  (a / b)' = (a'b - ab') / (b * b)
+     (a % b)' = a' - b' * (a - a % b) / b          (a % b = a - b * trunc(a / b))
+     (a ^ c)' = c * a^(c - 1) * a'                   (c 가 상수)
+     (a ^ b)' = a^b * (b' * log(a) + b * a' / a)
+     sqrt, exp, log, log10, abs, min, max 는 해당 규칙, floor, ceil, round 는 0
+   A = 식 은 식의 도함수를 구한다. 문자열 상수, 미분 규칙이 없는 함수(사용자
+   함수, len)가 변수에 따라 바뀌면 OPERATOR 오류가 난다.
+   abs(u)' = sign(u) * u' 이므로 u = 0 에서는 0(양쪽 한쪽 도함수의 평균)이다.
+   min, max 는 두 인자가 같으면 첫 번째 인자의 도함수를 쓴다.
+
+   만들면서 0, 1 곱셈과 덧셈, 상수 계산을 바로 정리하므로 결과 트리가
+   불필요하게 커지지 않는다. 변수는 숫자로 본다.
+*/
+final class Differentiator {
+    private static final double LN10 = Math.log(10);
+
+    // 도함수에서 쓰는 함수(등록된 함수를 사용자가 바꾸어도 영향 없음)
+    private static final FunctionRegistry.Entry SQRT = FunctionRegistry.pureUnary("sqrt", Math::sqrt);
+    private static final FunctionRegistry.Entry EXP = FunctionRegistry.pureUnary("exp", Math::exp);
+    private static final FunctionRegistry.Entry LOG = FunctionRegistry.pureUnary("log", Math::log);
+    private static final FunctionRegistry.Entry SIGN = FunctionRegistry.pureUnary("sign", Math::signum);
+    // a <= b 이면 1, 아니면 0
+    private static final FunctionRegistry.Entry LE = FunctionRegistry.pureBinary("le", (a, b) -> a <= b ? 1 : 0);
+
+    private static final Node ZERO = num(0);
+    private static final Node ONE = num(1);
+
+    private final int slot;   // 미분할 변수
+
+    private Differentiator(int slot) {
+        this.slot = slot;
+    }
+
+    // e 를 변수 var 로 미분한 수식
+    static Expression derivative(Expression e, String var) throws ParserException {
+        SymbolTable symbols = e.getSymbols();
+        Node root = e.getRoot();
+        if(root.kind == Node.ASSIGN) root = root.left;
+        Node d = new Differentiator(symbols.slot(var)).diff(root);
+        return new Expression("d/d" + symbols.name(symbols.slot(var)) + "(" + e.getSource() + ")", d, symbols);
+    }
+
+    private Node diff(Node n) throws ParserException {
+        switch(n.kind) {
+            case Node.CONST:
+                if(!n.value.isNumber())
+                    Parser.handleErr(Parser.OPERATOR);
+                return ZERO;
+            case Node.VAR:
+                return n.slot == slot ? ONE : ZERO;
+            case Node.ASSIGN:
+                return diff(n.left);
+            case Node.NEG:
+                return neg(diff(n.left));
+            case Node.CALL:
+                return diffCall(n);
+            default:
+                return diffBinary(n);
+        }
+    }
+
+    private Node diffBinary(Node n) throws ParserException {
+        Node a = n.left, b = n.right;
+        Node da = diff(a), db = diff(b);
+        switch(n.op) {
+            case '+':
+                return add(da, db);
+            case '-':
+                return sub(da, db);
+            case '*':
+                return add(mul(da, b), mul(a, db));
+            case '/':
+                if(isZero(db)) return div(da, b);
+                return div(sub(mul(da, b), mul(a, db)), mul(b, b));
+            case '%':
+                if(isZero(db)) return da;
+                return sub(da, mul(db, div(sub(a, Node.binary('%', a, b)), b)));
+            default:    // ^
+                if(isZero(db)) {
+                    if(isZero(da)) return ZERO;
+                    return mul(mul(b, pow(a, sub(b, ONE))), da);
+                }
+                return mul(pow(a, b), add(mul(db, call(LOG, a)), div(mul(b, da), a)));
+        }
+    }
+
+    private Node diffCall(Node n) throws ParserException {
+        Node[] args = n.args;
+        Node[] d = new Node[args.length];
+        boolean constant = true;
+        for(int i = 0; i < args.length; i++) {
+            d[i] = diff(args[i]);
+            constant &= isZero(d[i]);
+        }
+        if(constant) return ZERO;
+
+        Node u = args[0], du = d[0];
+        if(n.fn.pure) {
+            switch(n.fn.name) {
+                case "SQRT":
+                    return div(du, mul(num(2), call(SQRT, u)));
+                case "EXP":
+                    return mul(call(EXP, u), du);
+                case "LOG":
+                    return div(du, u);
+                case "LOG10":
+                    return div(du, mul(u, num(LN10)));
+                case "ABS":
+                    return mul(call(SIGN, u), du);
+                case "FLOOR":
+                case "CEIL":
+                case "ROUND":
+                    return ZERO;
+                case "MIN":
+                    return select(call(LE, u, args[1]), du, d[1]);
+                case "MAX":
+                    return select(call(LE, args[1], u), du, d[1]);
+            }
+        }
+        Parser.handleErr(Parser.OPERATOR);   // 미분 규칙이 없는 함수
+        return null;
+    }
+
+    // cond 가 1 이면 a, 0 이면 b
+    private static Node select(Node cond, Node a, Node b) {
+        return add(mul(cond, a), mul(sub(ONE, cond), b));
+    }
+
+    // --- 정리하면서 노드 만들기 ---
+
+    private static Node num(double d) {
+        return Node.constant(Value.number(d));
+    }
+
+    private static boolean isConst(Node n) {
+        return n.kind == Node.CONST && n.value.isNumber();
+    }
+
+    private static boolean isZero(Node n) {
+        return isConst(n) && n.value.num() == 0;
+    }
+
+    private static boolean isOne(Node n) {
+        return isConst(n) && n.value.num() == 1;
+    }
+
+    private static Node add(Node a, Node b) {
+        if(isZero(a)) return b;
+        if(isZero(b)) return a;
+        if(isConst(a) && isConst(b)) return num(a.value.num() + b.value.num());
+        if(b.kind == Node.NEG) return sub(a, b.left);
+        return Node.binary('+', a, b);
+    }
+
+    private static Node sub(Node a, Node b) {
+        if(isZero(b)) return a;
+        if(isZero(a)) return neg(b);
+        if(isConst(a) && isConst(b)) return num(a.value.num() - b.value.num());
+        if(b.kind == Node.NEG) return add(a, b.left);
+        return Node.binary('-', a, b);
+    }
+
+    private static Node mul(Node a, Node b) {
+        if(isZero(a) || isZero(b)) return ZERO;
+        if(isOne(a)) return b;
+        if(isOne(b)) return a;
+        if(isConst(a) && isConst(b)) return num(a.value.num() * b.value.num());
+        if(isConst(a) && a.value.num() == -1) return neg(b);
+        if(isConst(b) && b.value.num() == -1) return neg(a);
+        if(a.kind == Node.NEG) return neg(mul(a.left, b));
+        if(b.kind == Node.NEG) return neg(mul(a, b.left));
+        return Node.binary('*', a, b);
+    }
+
+    private static Node div(Node a, Node b) {
+        if(isZero(a)) return ZERO;
+        if(isOne(b)) return a;
+        if(isConst(a) && isConst(b) && b.value.num() != 0) return num(a.value.num() / b.value.num());
+        return Node.binary('/', a, b);
+    }
+
+    private static Node pow(Node a, Node b) {
+        if(isZero(b)) return ONE;
+        if(isOne(b)) return a;
+        if(isConst(a) && isConst(b)) return num(Math.pow(a.value.num(), b.value.num()));
+        return Node.binary('^', a, b);
+    }
+
+    private static Node neg(Node a) {
+        if(isConst(a)) return num(-a.value.num());
+        if(a.kind == Node.NEG) return a.left;
+        return Node.neg(a);
+    }
+
+    private static Node call(FunctionRegistry.Entry fn, Node... args) {
+        for(Node a : args)
+            if(!isConst(a)) return Node.call(fn, args);
+        double r = args.length == 1 ? fn.unary.applyAsDouble(args[0].value.num())
+                : fn.binary.applyAsDouble(args[0].value.num(), args[1].value.num());
+        return num(r);
+    }
+}
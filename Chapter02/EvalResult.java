@@ -0,0 +1,51 @@
+package com.company;
+/*
+   Parser.tryEvaluate()의 결과. 계산 결과나 오류 중 하나를 담는다.
+   잘못된 수식이 많은 입력에서 예외를 던지고 받는 비용 없이
+   오류를 확인할 수 있다.
+*/
+final class EvalResult {
+    private final String value;   // 결과(오류이면 null)
+    private final int code;       // 오류 코드(성공이면 -1)
+    private final int position;   // 오류 위치(모르면 -1)
+
+    private EvalResult(String value, int code, int position) {
+        this.value = value;
+        this.code = code;
+        this.position = position;
+    }
+
+    static EvalResult ok(String value) {
+        return new EvalResult(value, -1, -1);
+    }
+
+    static EvalResult error(int code, int position) {
+        return new EvalResult(null, code, position);
+    }
+
+    boolean isError() {
+        return code >= 0;
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    int getErrorCode() {
+        return code;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    // 오류 메시지(성공이면 null)
+    String getMessage() {
+        return code >= 0 ? Parser.errorMessage(code) : null;
+    }
+
+    // 결과 또는 오류 메시지(Main 이 출력하는 형식과 같음)
+    public String toString() {
+        return code >= 0 ? getMessage() : value;
+    }
+}
@@ -0,0 +1,93 @@
+package com.company;
+
+import java.util.Arrays;
+
+/*
+   한 번의 계산(또는 한 스레드)에서만 쓰는 변수 바인딩.
+   Parser 와 Expression 은 상태가 없으므로 여러 스레드가 공유하고,
+   스레드마다 자신의 EvaluationContext 를 넘겨 계산한다.
+   공유가 필요한 변수는 SharedVariables 를 지정하면 그쪽에 읽고 쓴다.
+
+   변수 값은 SymbolTable 의 슬롯 번호로 배열에 저장한다. 같은 변수를
+   반복해서 지정할 때는 이름 대신 slot()으로 미리 얻은 번호를 쓰면
+   이름을 찾는 비용도 들지 않는다.
+*/
+final class EvaluationContext {
+    private final SymbolTable symbols;            // 변수 이름과 슬롯 대응표
+    private Value[] vars = new Value[16];         // 슬롯별 변수 값(필요할 때 늘림)
+    private final SharedVariables shared;         // 공유 변수 저장소(없으면 null)
+    private boolean exactPowers;                  // ^ 를 BigDecimal 로 정확히 계산할지 여부
+    private int maxStringLength = Operators.MAX_STRING_LENGTH;  // 문자열 결과 최대 길이
+
+    EvaluationContext(SymbolTable symbols) {
+        this(symbols, null);
+    }
+
+    EvaluationContext(SymbolTable symbols, SharedVariables shared) {
+        this.symbols = symbols;
+        this.shared = shared;
+    }
+
+    boolean isExactPowers() {
+        return exactPowers;
+    }
+
+    // 큰 정수 거듭제곱 결과를 정확한 10진 표기로 받으려면 true
+    void setExactPowers(boolean exactPowers) {
+        this.exactPowers = exactPowers;
+    }
+
+    int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    // +, * 로 만들 수 있는 문자열 길이 제한(넘으면 "String result too long")
+    void setMaxStringLength(int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+    }
+
+    // 변수 이름의 슬롯 번호(set(int, ...)에 반복해서 쓸 수 있음)
+    int slot(String name) {
+        return symbols.slot(name);
+    }
+
+    // 변수 값(할당되지 않았으면 0)
+    Value get(int slot) {
+        Value v;
+        if(shared != null) v = shared.get(slot);
+        else v = slot < vars.length ? vars[slot] : null;
+        return v != null ? v : Value.ZERO;
+    }
+
+    void set(int slot, Value v) {
+        if(shared != null) shared.set(slot, v);
+        else {
+            if(slot >= vars.length)
+                vars = Arrays.copyOf(vars, Math.max(slot + 1, vars.length * 2));
+            vars[slot] = v;
+        }
+    }
+
+    void set(int slot, double value) {
+        set(slot, Value.number(value));
+    }
+
+    void set(int slot, String value) {
+        set(slot, Value.of(value));
+    }
+
+    // 변수 이름으로 값 지정
+    void set(String name, double value) {
+        set(symbols.slot(name), Value.number(value));
+    }
+
+    void set(String name, String value) {
+        set(symbols.slot(name), Value.of(value));
+    }
+
+    // 변수 이름으로 값 읽기(할당되지 않았으면 0)
+    Value get(String name) {
+        int slot = symbols.find(name);
+        return slot >= 0 ? get(slot) : Value.ZERO;
+    }
+}
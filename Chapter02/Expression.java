@@ -0,0 +1,347 @@
+package com.company;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+
+/*
+   Parser.compile()이 반환하는 컴파일된 수식.
+   토큰 분석과 구문 분석은 컴파일 시 한 번만 수행되고,
+   evaluate()는 트리만 따라가며 계산한다.
+   트리 계산이 스레드 스택을 넘칠 만큼 깊은 수식은 같은 트리를 재귀 없는
+   명령열(RpnExpression)로 바꿔 계산하므로 StackOverflowError 가 밖으로 나가지 않는다.
+*/
+final class Expression {
+    private final String source; // 원본 수식
+    private final Node root;     // 수식 트리의 루트
+    private final SymbolTable symbols;         // 변수 슬롯 대응표
+    private final List<String> optimizations;  // 컴파일 시 적용한 최적화
+    private final int errorCode;      // 파싱 오류 코드(올바른 수식이면 -1)
+    private final int errorPosition;  // 파싱 오류 위치
+
+    private volatile NumericFunction compiled;  // 바이트코드 함수(처음 요청할 때 생성)
+    private volatile RpnExpression iterative;   // 재귀 없는 명령열(스택이 넘칠 때 생성)
+    // 트리의 노드 수(위 32비트)와 깊이(아래 32비트). 처음 요청할 때 계산하며,
+    // 두 값을 한 번에 쓰므로 다른 스레드가 한쪽만 계산된 값을 볼 수 없다(0 이면 아직 계산 전)
+    private volatile long shape;
+
+    Expression(String source, Node root, SymbolTable symbols) {
+        this(source, root, symbols, Collections.<String>emptyList());
+    }
+
+    Expression(String source, Node root, SymbolTable symbols, List<String> optimizations) {
+        this.source = source;
+        this.root = root;
+        this.symbols = symbols;
+        this.optimizations = optimizations;
+        this.errorCode = -1;
+        this.errorPosition = -1;
+    }
+
+    private Expression(String source, int errorCode, int errorPosition) {
+        this.source = source;
+        this.root = null;
+        this.symbols = null;
+        this.optimizations = Collections.<String>emptyList();
+        this.errorCode = errorCode;
+        this.errorPosition = errorPosition;
+    }
+
+    // 파싱에 실패한 수식(캐시에 넣어 같은 오류를 다시 파싱하지 않도록)
+    static Expression invalid(String source, int errorCode, int errorPosition) {
+        return new Expression(source, errorCode, errorPosition);
+    }
+
+    boolean isInvalid() {
+        return errorCode >= 0;
+    }
+
+    int getErrorCode() {
+        return errorCode;
+    }
+
+    int getErrorPosition() {
+        return errorPosition;
+    }
+
+    String getSource() {
+        return source;
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    // 상수 접기, 단순화로 바뀐 부분(최적화하지 않았으면 비어 있음)
+    List<String> getOptimizations() {
+        return optimizations;
+    }
+
+    // 주어진 변수 바인딩으로 수식 계산(문자열 결과는 여기서 한 번만 펼침)
+    String evaluate(EvaluationContext ctx) throws ParserException
+    {
+        Value result = value(ctx);
+
+        if(!result.isNumber())    //결과 값이 문자열이면 큰따옴표 삽입
+            return "\""+result+"\"";
+        return result.toString();
+    }
+
+    // 계산 결과 값(따옴표를 붙이지 않음)
+    Value value(EvaluationContext ctx) throws ParserException
+    {
+        try {
+            return eval(root, ctx);
+        } catch(StackOverflowError err) {
+            // 할당은 루트에서 계산이 끝난 뒤에만 하므로 다시 계산해도 된다
+            return iterative().value(ctx);
+        }
+    }
+
+    // 예외 대신 결과 또는 오류를 반환
+    EvalResult tryEvaluate(EvaluationContext ctx)
+    {
+        try {
+            return EvalResult.ok(evaluate(ctx));
+        } catch(ParserException exc) {
+            return EvalResult.error(exc.getCode(), exc.getPosition());
+        }
+    }
+
+    private static Value eval(Node n, EvaluationContext ctx) throws ParserException
+    {
+        switch(n.kind) {
+            case Node.CONST:
+                return n.value;
+            case Node.VAR:
+                return ctx.get(n.slot);
+            case Node.ASSIGN: {
+                Value result = eval(n.left, ctx);
+                ctx.set(n.slot, result);
+                return result;
+            }
+            case Node.NEG:
+                return Operators.neg(eval(n.left, ctx));
+            case Node.CALL:
+                return call(n, ctx);
+            default: {
+                if(n.op == '^')
+                    return evalPow(n, ctx);
+                if(isChain(n.left))
+                    return evalChain(n, ctx);
+                Value result = eval(n.left, ctx);
+                Value partialResult = eval(n.right, ctx);
+                return Operators.apply(n.op, result, partialResult, ctx.getMaxStringLength());
+            }
+        }
+    }
+
+    // a+b-c*d... 처럼 왼쪽 자식으로 이어지는 이항 연산(^ 제외)인지
+    private static boolean isChain(Node n)
+    {
+        return n.kind == Node.BINARY && n.op != '^';
+    }
+
+    // 왼쪽 자식으로 이어지는 노드들(맨 아래 노드가 0번)
+    private static Node[] chain(Node n)
+    {
+        int len = 1;
+        for(Node t = n.left; isChain(t); t = t.left) len++;
+
+        Node[] chain = new Node[len];
+        for(int i = len - 1; i >= 0; i--, n = n.left)
+            chain[i] = n;
+        return chain;
+    }
+
+    /* 1+2+3... 같은 긴 체인은 왼쪽 자식으로만 깊어지므로 재귀 대신
+       맨 왼쪽 피연산자부터 오른쪽 피연산자를 차례로 적용한다. */
+    private static Value evalChain(Node n, EvaluationContext ctx) throws ParserException
+    {
+        Node[] chain = chain(n);
+        Value result = eval(chain[0].left, ctx);
+        for(Node t : chain)
+            result = Operators.apply(t.op, result, eval(t.right, ctx), ctx.getMaxStringLength());
+        return result;
+    }
+
+    // 함수 호출(인자가 한두 개이면 배열을 만들지 않음)
+    private static Value call(Node n, EvaluationContext ctx) throws ParserException
+    {
+        Node[] args = n.args;
+        switch(args.length) {
+            case 1:
+                return n.fn.apply(eval(args[0], ctx));
+            case 2: {
+                Value a = eval(args[0], ctx);
+                return n.fn.apply(a, eval(args[1], ctx));
+            }
+            default: {
+                Value[] values = new Value[args.length];
+                for(int i = 0; i < args.length; i++)
+                    values[i] = eval(args[i], ctx);
+                return n.fn.apply(values);
+            }
+        }
+    }
+
+    /* a^b^c... 체인은 오른쪽 자식으로만 이어지므로 재귀 대신
+       밑을 왼쪽부터 계산해 모은 뒤 오른쪽부터 거듭제곱한다. */
+    private static Value evalPow(Node n, EvaluationContext ctx) throws ParserException
+    {
+        int len = 1;
+        for(Node t = n.right; t.kind == Node.BINARY && t.op == '^'; t = t.right) len++;
+
+        Value[] bases = new Value[len];
+        Node t = n;
+        for(int i = 0; i < len; i++, t = t.right)
+            bases[i] = eval(t.left, ctx);
+
+        Value result = eval(t, ctx);
+        for(int i = len - 1; i >= 0; i--)
+            result = Operators.pow(bases[i], result, ctx.isExactPowers());
+        return result;
+    }
+
+    // 트리의 노드 수
+    int size() {
+        return (int) (shape() >>> 32);
+    }
+
+    // 트리의 깊이(루트만 있으면 1)
+    int depth() {
+        return (int) shape();
+    }
+
+    private long shape() {
+        long s = shape;
+        if(s == 0)
+            shape = s = measure();
+        return s;
+    }
+
+    // 재귀하지 않고 노드 수와 깊이를 셈(여러 스레드가 동시에 세어도 같은 값을 씀)
+    private long measure() {
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        nodes.push(root);
+        depths.push(1);
+        int n = 0, max = 0;
+        while(!nodes.isEmpty()) {
+            Node t = nodes.pop();
+            int d = depths.pop();
+            n++;
+            max = Math.max(max, d);
+            if(t.left != null) { nodes.push(t.left); depths.push(d + 1); }
+            if(t.right != null) { nodes.push(t.right); depths.push(d + 1); }
+            if(t.args != null)
+                for(Node a : t.args) { nodes.push(a); depths.push(d + 1); }
+        }
+        return (long) n << 32 | max;
+    }
+
+    /* 자원 제한 안에서 계산. 노드 수와 깊이는 계산 전에 검사하고
+       계산 중에는 문자열 길이와 시간만 확인한다. 시간 확인 사이의 노드 수보다
+       작은 트리는 금방 끝나므로 시간을 확인하지 않는다.
+       정확한 거듭제곱(BigDecimal, 지수 999999 까지)은 한 번의 연산이 제한 없이
+       오래 걸릴 수 있으므로 끄고 double 로 계산한다. */
+    String evaluate(EvaluationContext ctx, Budget budget) throws ParserException
+    {
+        budget.checkTree(this);
+        int maxLength = ctx.getMaxStringLength();
+        boolean exact = ctx.isExactPowers();
+        ctx.setMaxStringLength(Math.min(maxLength, budget.maxStringLength));
+        ctx.setExactPowers(false);
+        try {
+            // 작은 트리는 시간 확인 없이 보통 경로로 계산
+            if(size() <= Budget.TIME_CHECK)
+                return evaluate(ctx);
+
+            Value result;
+            try {
+                result = eval(root, ctx, new Budget.Meter(budget), ctx.getMaxStringLength());
+            } catch(StackOverflowError err) {
+                // 명령열은 시간을 확인하지 않지만 노드 수는 이미 검사했다
+                return iterative().evaluate(ctx);
+            }
+
+            if(!result.isNumber())    //결과 값이 문자열이면 큰따옴표 삽입
+                return "\""+result+"\"";
+            return result.toString();
+        } finally {
+            ctx.setMaxStringLength(maxLength);
+            ctx.setExactPowers(exact);
+        }
+    }
+
+    private RpnExpression iterative() {
+        RpnExpression r = iterative;
+        if(r == null)
+            iterative = r = RpnCompiler.compile(source, root);
+        return r;
+    }
+
+    // eval()과 같지만 노드마다 시간을 확인하고 문자열 길이 제한을 maxLength 로 바꿈
+    private static Value eval(Node n, EvaluationContext ctx, Budget.Meter meter, int maxLength)
+            throws ParserException
+    {
+        meter.tick();
+        switch(n.kind) {
+            case Node.CONST:
+                return n.value;
+            case Node.VAR:
+                return ctx.get(n.slot);
+            case Node.ASSIGN: {
+                Value result = eval(n.left, ctx, meter, maxLength);
+                ctx.set(n.slot, result);
+                return result;
+            }
+            case Node.NEG:
+                return Operators.neg(eval(n.left, ctx, meter, maxLength));
+            case Node.CALL: {
+                Value[] values = new Value[n.args.length];
+                for(int i = 0; i < values.length; i++)
+                    values[i] = eval(n.args[i], ctx, meter, maxLength);
+                return n.fn.apply(values);
+            }
+            default: {
+                if(n.op != '^' && isChain(n.left))
+                    return evalChain(n, ctx, meter, maxLength);
+                Value result = eval(n.left, ctx, meter, maxLength);
+                Value partialResult = eval(n.right, ctx, meter, maxLength);
+                if(n.op == '^')
+                    return Operators.pow(result, partialResult, false);
+                return Operators.apply(n.op, result, partialResult, maxLength);
+            }
+        }
+    }
+
+    private static Value evalChain(Node n, EvaluationContext ctx, Budget.Meter meter, int maxLength)
+            throws ParserException
+    {
+        Node[] chain = chain(n);
+        for(int i = 1; i < chain.length; i++) meter.tick();    // n 은 이미 셌음
+        Value result = eval(chain[0].left, ctx, meter, maxLength);
+        for(Node t : chain)
+            result = Operators.apply(t.op, result, eval(t.right, ctx, meter, maxLength), maxLength);
+        return result;
+    }
+
+    /* 숫자 수식을 바이트코드로 컴파일한 함수. 한 번만 컴파일하며,
+       이 Expression 이 더 이상 쓰이지 않으면 함께 언로드된다. */
+    NumericFunction toNumericFunction() throws ParserException
+    {
+        NumericFunction f = compiled;
+        if(f == null)
+            compiled = f = BytecodeCompiler.compile(this);
+        return f;
+    }
+
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,345 @@
+package com.company;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+   같은 변수 바인딩으로 함께 계산하는 수식 묶음.
+   모든 수식의 트리를 후위 순서로 훑으며 같은 부분 식(같은 연산, 같은
+   피연산자)을 해시로 찾아 하나의 레지스터로 합친다. 그래서 여러 수식에
+   나오는 (A * B), (C + D) ^ 2 같은 식은 evaluate() 한 번에 한 번만 계산된다.
+
+   결과와 오류는 수식을 차례로 Parser.evaluate()한 것과 같다.
+     - 할당(A = ...)은 그 자리에서 변수에 쓰고, 뒤의 수식이 읽는 A 는
+       할당 뒤에 새로 읽는다.
+     - 오류가 난 레지스터를 쓰는 식은 같은 오류가 된다. 피연산자는 왼쪽부터
+       확인하므로 수식마다 먼저 만나는 오류가 같다.
+     - 순수하지 않은 함수(registerUnary 등으로 등록한 함수) 호출은 합치지
+       않고 나올 때마다 따로 계산한다. 앞의 피연산자에서 오류가 나도 호출된다.
+*/
+final class ExpressionBatch {
+    // 명령(명령 i 의 결과는 레지스터 i)
+    private static final int CONST = 0;
+    private static final int LOAD = 1;    // 변수 읽기(arg 는 슬롯)
+    private static final int STORE = 2;   // left 레지스터 값을 변수에 할당(arg 는 슬롯)
+    private static final int NEG = 3;
+    private static final int BINARY = 4;  // arg 는 연산자 문자
+    private static final int CALL = 5;
+
+    private final int count;               // 수식 수
+    private final int[] output;            // 수식별 결과 레지스터(-1 이면 파싱 오류)
+    private final EvalResult[] invalid;    // 파싱에 실패한 수식의 오류
+
+    private int[] code = new int[64];
+    private int[] arg = new int[64];
+    private int[] left = new int[64];
+    private int[] right = new int[64];
+    private Value[] consts = new Value[64];
+    private FunctionRegistry.Entry[] fns = new FunctionRegistry.Entry[64];
+    private int[][] args = new int[64][];
+    private int size;
+
+    private int naiveOps;   // 합치지 않았을 때의 연산 수
+    private int sharedOps;  // 합친 뒤의 연산 수
+
+    // 컴파일 중에만 쓰는 상태
+    private HashMap<Key, Integer> shared = new HashMap<>();
+    private HashMap<Integer, Integer> loaded = new HashMap<>();  // 슬롯별 현재 값 레지스터
+
+    private ExpressionBatch(int count) {
+        this.count = count;
+        this.output = new int[count];
+        this.invalid = new EvalResult[count];
+    }
+
+    // 수식 문자열 묶음을 컴파일(파싱 오류가 있는 수식은 결과가 그 오류)
+    static ExpressionBatch compile(Parser parser, List<String> sources) {
+        ExpressionBatch b = new ExpressionBatch(sources.size());
+        for(int i = 0; i < sources.size(); i++) {
+            try {
+                b.output[i] = b.add(parser.compile(sources.get(i)));
+            } catch(ParserException exc) {
+                b.output[i] = -1;
+                b.invalid[i] = EvalResult.error(exc.getCode(), exc.getPosition());
+            }
+        }
+        b.finish();
+        return b;
+    }
+
+    // 같은 Parser 로 컴파일한 수식 묶음
+    static ExpressionBatch of(List<Expression> exprs) {
+        ExpressionBatch b = new ExpressionBatch(exprs.size());
+        SymbolTable symbols = null;
+        for(int i = 0; i < exprs.size(); i++) {
+            Expression e = exprs.get(i);
+            if(e.isInvalid()) {
+                b.output[i] = -1;
+                b.invalid[i] = EvalResult.error(e.getErrorCode(), e.getErrorPosition());
+                continue;
+            }
+            if(symbols == null) symbols = e.getSymbols();
+            else if(symbols != e.getSymbols())
+                throw new IllegalArgumentException("expressions come from different parsers");
+            b.output[i] = b.add(e);
+        }
+        b.finish();
+        return b;
+    }
+
+    private void finish() {
+        shared = null;
+        loaded = null;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // 합치지 않았을 때의 연산(단항 -, 이항 연산, 함수 호출) 수
+    int naiveOperations() {
+        return naiveOps;
+    }
+
+    // 실제로 계산하는 연산 수
+    int sharedOperations() {
+        return sharedOps;
+    }
+
+    // 연산이 줄어든 비율(2.0 이면 절반만 계산)
+    double shareRatio() {
+        return sharedOps == 0 ? 1.0 : (double) naiveOps / sharedOps;
+    }
+
+    // 수식 하나를 명령으로 바꾸고 결과 레지스터를 반환(재귀하지 않음)
+    private int add(Expression e) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        ArrayDeque<Boolean> visited = new ArrayDeque<>();
+        int[] regs = new int[16];   // 자식 결과 레지스터 스택
+        int rp = 0;
+
+        stack.push(e.getRoot());
+        visited.push(false);
+        while(!stack.isEmpty()) {
+            Node n = stack.pop();
+            if(!visited.pop()) {
+                stack.push(n);
+                visited.push(true);
+                if(n.args != null)
+                    for(int i = n.args.length - 1; i >= 0; i--) {
+                        stack.push(n.args[i]);
+                        visited.push(false);
+                    }
+                if(n.right != null) {
+                    stack.push(n.right);
+                    visited.push(false);
+                }
+                if(n.left != null) {
+                    stack.push(n.left);
+                    visited.push(false);
+                }
+                continue;
+            }
+
+            int r;
+            switch(n.kind) {
+                case Node.CONST: {
+                    Value v = n.value;
+                    Key k = v.isNumber()
+                            ? new Key(CONST, 'n', v.text(), Double.doubleToRawLongBits(v.num()), null)
+                            : new Key(CONST, 's', v.toString(), 0, null);
+                    r = shared(k);
+                    if(r < 0) {
+                        r = emit(CONST, 0, -1, -1);
+                        consts[r] = v;
+                        shared.put(k, r);
+                    }
+                    break;
+                }
+                case Node.VAR: {
+                    Integer reg = loaded.get(n.slot);
+                    if(reg == null) {
+                        reg = emit(LOAD, n.slot, -1, -1);
+                        loaded.put(n.slot, reg);
+                    }
+                    r = reg;
+                    break;
+                }
+                case Node.ASSIGN:
+                    // 할당한 값이 수식의 결과. 뒤에서 읽는 변수는 다시 읽음
+                    r = regs[--rp];
+                    emit(STORE, n.slot, r, -1);
+                    loaded.remove(n.slot);
+                    break;
+                case Node.NEG:
+                    naiveOps++;
+                    r = operation(new Key(NEG, '-', null, 0, new int[] { regs[--rp] }), null);
+                    break;
+                case Node.BINARY: {
+                    naiveOps++;
+                    rp -= 2;
+                    r = operation(new Key(BINARY, n.op, null, 0, new int[] { regs[rp], regs[rp + 1] }), null);
+                    break;
+                }
+                default: {
+                    naiveOps++;
+                    rp -= n.args.length;
+                    r = operation(new Key(CALL, '\0', n.fn, 0, Arrays.copyOfRange(regs, rp, rp + n.args.length)),
+                            n.fn);
+                    break;
+                }
+            }
+            if(rp == regs.length) regs = Arrays.copyOf(regs, rp * 2);
+            regs[rp++] = r;
+        }
+        return regs[0];
+    }
+
+    private int shared(Key k) {
+        Integer r = shared.get(k);
+        return r != null ? r : -1;
+    }
+
+    // 연산 명령(같은 연산이 이미 있으면 그 레지스터)
+    private int operation(Key k, FunctionRegistry.Entry fn) {
+        boolean pure = fn == null || fn.pure;
+        int r = pure ? shared(k) : -1;
+        if(r >= 0) return r;
+
+        int[] in = k.in;
+        sharedOps++;
+        if(k.kind == CALL) {
+            r = emit(CALL, 0, -1, -1);
+            fns[r] = fn;
+            args[r] = in;
+        }
+        else r = emit(k.kind, k.op, in[0], in.length > 1 ? in[1] : -1);
+        if(pure) shared.put(k, r);
+        return r;
+    }
+
+    private int emit(int instr, int a, int l, int rr) {
+        if(size == code.length) {
+            int n = size * 2;
+            code = Arrays.copyOf(code, n);
+            arg = Arrays.copyOf(arg, n);
+            left = Arrays.copyOf(left, n);
+            right = Arrays.copyOf(right, n);
+            consts = Arrays.copyOf(consts, n);
+            fns = Arrays.copyOf(fns, n);
+            args = Arrays.copyOf(args, n);
+        }
+        code[size] = instr;
+        arg[size] = a;
+        left[size] = l;
+        right[size] = rr;
+        return size++;
+    }
+
+    // 해시로 찾는 부분 식(종류, 연산자, 상수나 함수, 피연산자 레지스터)
+    private static final class Key {
+        final int kind;
+        final char op;
+        final Object payload;
+        final long bits;
+        final int[] in;
+        final int hash;
+
+        Key(int kind, char op, Object payload, long bits, int[] in) {
+            this.kind = kind;
+            this.op = op;
+            this.payload = payload;
+            this.bits = bits;
+            this.in = in;
+            int h = (kind * 31 + op) * 31 + Long.hashCode(bits);
+            h = h * 31 + (payload == null ? 0 : payload.hashCode());
+            this.hash = h * 31 + Arrays.hashCode(in);
+        }
+
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return hash == k.hash && kind == k.kind && op == k.op && bits == k.bits
+                    && (payload == null ? k.payload == null : payload.equals(k.payload))
+                    && Arrays.equals(in, k.in);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // 모든 수식을 계산해 수식 순서대로 결과를 반환
+    EvalResult[] evaluate(EvaluationContext ctx) {
+        Value[] regs = new Value[size];
+        ParserException[] errs = new ParserException[size];
+
+        for(int pc = 0; pc < size; pc++) {
+            int l = left[pc];
+            try {
+                switch(code[pc]) {
+                    case CONST:
+                        regs[pc] = consts[pc];
+                        break;
+                    case LOAD:
+                        regs[pc] = ctx.get(arg[pc]);
+                        break;
+                    case STORE:
+                        if(errs[l] == null) ctx.set(arg[pc], regs[l]);
+                        break;
+                    case NEG:
+                        if(errs[l] != null) errs[pc] = errs[l];
+                        else regs[pc] = Operators.neg(regs[l]);
+                        break;
+                    case BINARY: {
+                        int r = right[pc];
+                        if(errs[l] != null) errs[pc] = errs[l];
+                        else if(errs[r] != null) errs[pc] = errs[r];
+                        else if(arg[pc] == '^') regs[pc] = Operators.pow(regs[l], regs[r], ctx.isExactPowers());
+                        else regs[pc] = Operators.apply((char) arg[pc], regs[l], regs[r], ctx.getMaxStringLength());
+                        break;
+                    }
+                    default:
+                        call(pc, regs, errs);
+                        break;
+                }
+            } catch(ParserException exc) {
+                errs[pc] = exc;
+            }
+        }
+
+        EvalResult[] results = new EvalResult[count];
+        for(int i = 0; i < count; i++) {
+            int r = output[i];
+            if(r < 0) results[i] = invalid[i];
+            else if(errs[r] != null) results[i] = EvalResult.error(errs[r].getCode(), errs[r].getPosition());
+            else if(!regs[r].isNumber()) results[i] = EvalResult.ok("\"" + regs[r] + "\"");
+            else results[i] = EvalResult.ok(regs[r].toString());
+        }
+        return results;
+    }
+
+    private void call(int pc, Value[] regs, ParserException[] errs) throws ParserException {
+        int[] in = args[pc];
+        for(int a : in)
+            if(errs[a] != null) {
+                errs[pc] = errs[a];
+                return;
+            }
+        FunctionRegistry.Entry fn = fns[pc];
+        if(in.length == 1) regs[pc] = fn.apply(regs[in[0]]);
+        else if(in.length == 2) regs[pc] = fn.apply(regs[in[0]], regs[in[1]]);
+        else {
+            Value[] values = new Value[in.length];
+            for(int i = 0; i < in.length; i++) values[i] = regs[in[i]];
+            regs[pc] = fn.apply(values);
+        }
+    }
+
+    public String toString() {
+        return String.format("%d expressions, %d operations -> %d (%.2fx)",
+                count, naiveOps, sharedOps, shareRatio());
+    }
+}
@@ -0,0 +1,204 @@
+package com.company;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+   수식 문자열을 키로 컴파일된 Expression 을 보관하는 크기 제한 캐시.
+   키 해시로 나눈 구역(segment)마다 따로 잠그므로 여러 스레드가
+   동시에 조회해도 경합이 적다. 구역이 가득 차면 정책에 따라 내보낸다.
+     LRU      - 가장 오래 사용되지 않은 항목을 내보냄
+     TINY_LFU - 새 항목의 사용 빈도가 내보낼 항목보다 높을 때만 받아들임
+   수식은 컴파일한 Parser 의 SymbolTable 슬롯을 가리키므로 캐시 하나는
+   Parser 하나만 사용할 수 있다(bind).
+*/
+final class ExpressionCache {
+    enum Policy { LRU, TINY_LFU }
+
+    private final Segment[] segments;
+    private final Policy policy;
+    private final int maximumSize;
+
+    // 이 캐시를 사용하는 Parser 의 SymbolTable(아직 없으면 null)
+    private SymbolTable owner;
+
+    // 통계
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ExpressionCache(int maximumSize) {
+        this(maximumSize, Policy.LRU);
+    }
+
+    ExpressionCache(int maximumSize, Policy policy) {
+        if(maximumSize <= 0)
+            throw new IllegalArgumentException("maximumSize must be positive");
+        this.maximumSize = maximumSize;
+        this.policy = policy;
+
+        // 구역 수는 2의 거듭제곱(최대 16), 구역당 16개 이상 담도록
+        int n = 1;
+        while(n < 16 && n * 16 <= maximumSize) n <<= 1;
+        segments = new Segment[n];
+        for(int i = 0; i < n; i++)
+            segments[i] = new Segment(maximumSize / n + (i < maximumSize % n ? 1 : 0));
+    }
+
+    /* symbols 를 쓰는 Parser 에 캐시를 연결. 이미 다른 Parser 가 사용 중이면
+       수식의 변수 슬롯이 맞지 않으므로 IllegalArgumentException */
+    synchronized void bind(SymbolTable symbols) {
+        if(owner != null && owner != symbols)
+            throw new IllegalArgumentException("cache is already used by another Parser");
+        owner = symbols;
+    }
+
+    // 캐시된 수식. 없으면 null
+    Expression get(String source) {
+        Expression e = segmentFor(source).get(source);
+        if(e != null) hits.increment();
+        else misses.increment();
+        return e;
+    }
+
+    void put(String source, Expression e) {
+        segmentFor(source).put(source, e);
+    }
+
+    void clear() {
+        for(Segment s : segments) s.clear();
+    }
+
+    int size() {
+        int size = 0;
+        for(Segment s : segments) size += s.size();
+        return size;
+    }
+
+    int maximumSize() { return maximumSize; }
+    Policy policy() { return policy; }
+    long hitCount() { return hits.sum(); }
+    long missCount() { return misses.sum(); }
+    long evictionCount() { return evictions.sum(); }
+
+    double hitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+
+    public String toString() {
+        return "ExpressionCache[" + policy + ", size=" + size() + "/" + maximumSize +
+                ", hits=" + hitCount() + ", misses=" + missCount() +
+                ", evictions=" + evictionCount() + "]";
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    // 하나의 잠금으로 보호되는 접근 순서 LinkedHashMap
+    private final class Segment {
+        private final int capacity;
+        private final LinkedHashMap<String, Expression> map;
+        private final FrequencySketch sketch;  // TINY_LFU 일 때만 사용
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true);
+            this.sketch = policy == Policy.TINY_LFU ? new FrequencySketch(capacity) : null;
+        }
+
+        synchronized Expression get(String key) {
+            if(sketch != null) sketch.increment(key);
+            return map.get(key);
+        }
+
+        synchronized void put(String key, Expression e) {
+            if(map.containsKey(key) || map.size() < capacity) {
+                map.put(key, e);
+                return;
+            }
+
+            // 가득 참: 가장 오래된 항목이 내보낼 후보
+            Iterator<Map.Entry<String, Expression>> it = map.entrySet().iterator();
+            String victim = it.next().getKey();
+            if(sketch != null && sketch.frequency(key) <= sketch.frequency(victim))
+                return; // 자주 쓰이지 않는 새 항목은 받아들이지 않음
+            it.remove();
+            evictions.increment();
+            map.put(key, e);
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+
+    /* 키별 최근 사용 빈도를 추정하는 count-min sketch.
+       4비트 카운터 16개를 long 하나에 담고, 일정 횟수마다
+       모든 카운터를 반으로 줄여 오래된 빈도를 잊는다. */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int n = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1);
+            table = new long[n];
+            sampleSize = Math.max(capacity, 1) * 10;
+        }
+
+        void increment(String key) {
+            int h = key.hashCode();
+            boolean added = false;
+            for(int i = 0; i < 4; i++) {
+                int idx = index(h, i);
+                int shift = counterShift(h, i);
+                if(((table[idx] >>> shift) & 0xfL) < 15) {
+                    table[idx] += 1L << shift;
+                    added = true;
+                }
+            }
+            if(added && ++additions == sampleSize)
+                reset();
+        }
+
+        int frequency(String key) {
+            int h = key.hashCode();
+            int min = 15;
+            for(int i = 0; i < 4; i++)
+                min = Math.min(min, (int) ((table[index(h, i)] >>> counterShift(h, i)) & 0xfL));
+            return min;
+        }
+
+        private int index(int h, int i) {
+            long x = (h + SEEDS[i]) * SEEDS[i];
+            x += x >>> 32;
+            return (int) x & (table.length - 1);
+        }
+
+        // long 안의 16개 카운터 중 하나(해시 함수마다 다른 위치)
+        private int counterShift(int h, int i) {
+            return (((h >>> (i << 3)) & 3) << 2 | i) << 2;
+        }
+
+        // 모든 카운터를 절반으로
+        private void reset() {
+            for(int i = 0; i < table.length; i++)
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            additions /= 2;
+        }
+    }
+}
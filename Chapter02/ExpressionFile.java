@@ -0,0 +1,518 @@
+package com.company;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/*
+   컴파일된 수식을 이진 파일로 저장하고 다시 읽는다.
+   시작할 때마다 수많은 수식을 다시 파싱하지 않도록, 파일은 메모리 매핑으로
+   열고 목차만 확인한 뒤 각 수식은 처음 요청할 때 하나씩 읽는다.
+
+   파일 형식(빅 엔디언)
+     머리     magic "EXPR", u2 버전, u2 예약(0), u4 수식 수, u4 목차 CRC32
+     목차     수식마다 u8 위치, u4 길이, u4 CRC32
+     수식     문자열 원본
+              u4 상수 수, 상수 {u1 종류, 값}
+              u4 명령 수, 명령 {u1 명령, u4 operand}  (후위 순서)
+              u4 최적화 수, 문자열 {최적화}
+   문자열은 u4 바이트 수와 수정된 UTF-8(짝 없는 서로게이트도 그대로 보존).
+   변수와 함수는 이름으로 저장하고 읽을 때 Parser 의 SymbolTable,
+   FunctionRegistry 에서 다시 찾으므로 슬롯 번호는 파일에 남지 않는다.
+   손상된 파일은 StreamCorruptedException 으로 거부한다.
+*/
+final class ExpressionFile {
+    private static final int MAGIC = 0x45585052;   // "EXPR"
+    static final int VERSION = 1;
+    private static final int HEADER = 16;          // 머리 크기
+    private static final int ENTRY = 16;           // 목차 항목 크기
+
+    // 상수 종류
+    private static final int NUMBER = 0;       // double
+    private static final int NUMBER_TEXT = 1;  // double 과 원래 표기
+    private static final int STRING = 2;       // 문자열
+    private static final int NAME = 3;         // 변수 이름
+    private static final int FUNCTION = 4;     // 함수 이름과 인자 수
+
+    // 명령(operand 는 CONST, VAR, ASSIGN, CALL 이면 상수 번호, BINARY 면 연산자 문자)
+    private static final int CONST = 0;
+    private static final int VAR = 1;
+    private static final int ASSIGN = 2;
+    private static final int NEG = 3;
+    private static final int BINARY = 4;
+    private static final int CALL = 5;
+
+    private final ByteBuffer map;
+    private final Parser parser;
+    private final int count;
+    private final AtomicReferenceArray<Expression> loaded;
+
+    private ExpressionFile(ByteBuffer map, Parser parser, int count) {
+        this.map = map;
+        this.parser = parser;
+        this.count = count;
+        this.loaded = new AtomicReferenceArray<>(count);
+    }
+
+    // 수식들을 파일에 저장. 파싱 오류가 있는 수식은 저장할 수 없다.
+    static void write(Path path, List<Expression> exprs) throws IOException {
+        byte[][] records = new byte[exprs.size()][];
+        for(int i = 0; i < records.length; i++)
+            records[i] = encode(exprs.get(i));
+
+        ByteBuffer head = ByteBuffer.allocate(HEADER + ENTRY * records.length);
+        head.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+            .putInt(records.length).putInt(0);
+        long pos = head.capacity();
+        for(byte[] r : records) {
+            head.putLong(pos).putInt(r.length).putInt(crc(r, 0, r.length));
+            pos += r.length;
+        }
+        head.putInt(12, crc(head.array(), HEADER, head.capacity() - HEADER));
+
+        try(OutputStream out = Files.newOutputStream(path)) {
+            out.write(head.array());
+            for(byte[] r : records) out.write(r);
+        }
+    }
+
+    // 파일을 매핑해 연다. 머리와 목차만 확인하고 수식은 get()에서 읽는다.
+    static ExpressionFile open(Path path, Parser parser) throws IOException {
+        ByteBuffer map;
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if(size > Integer.MAX_VALUE)
+                throw new IOException(path + " is larger than 2GB");
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if(map.capacity() < HEADER || map.getInt(0) != MAGIC)
+            throw new StreamCorruptedException("not an expression file");
+        int version = map.getShort(4) & 0xFFFF;
+        if(version != VERSION)
+            throw new StreamCorruptedException("unsupported expression file version " + version);
+        if(map.getShort(6) != 0)
+            throw new StreamCorruptedException("reserved header field is not zero");
+        int count = map.getInt(8);
+        if(count < 0 || (long) count * ENTRY > map.capacity() - HEADER)
+            throw new StreamCorruptedException("truncated table of contents");
+        if(crc(map, HEADER, count * ENTRY) != map.getInt(12))
+            throw new StreamCorruptedException("table of contents checksum mismatch");
+
+        for(int i = 0; i < count; i++) {
+            int at = HEADER + i * ENTRY;
+            long pos = map.getLong(at);
+            int len = map.getInt(at + 8);
+            if(pos < HEADER || len < 0 || pos + len > map.capacity())
+                throw new StreamCorruptedException("expression " + i + " lies outside the file");
+        }
+        return new ExpressionFile(map, parser, count);
+    }
+
+    int size() {
+        return count;
+    }
+
+    // i 번째 수식(처음 요청할 때 읽음)
+    Expression get(int i) throws IOException {
+        Expression e = loaded.get(i);
+        if(e == null) {
+            e = decode(i);
+            if(!loaded.compareAndSet(i, null, e))
+                e = loaded.get(i);
+        }
+        return e;
+    }
+
+    // 모든 수식
+    List<Expression> getAll() throws IOException {
+        List<Expression> out = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) out.add(get(i));
+        return out;
+    }
+
+    // --- 쓰기 ---
+
+    private static byte[] encode(Expression e) throws IOException {
+        if(e.isInvalid())
+            throw new IllegalArgumentException("cannot store invalid expression: " + e.getSource());
+
+        List<Const> consts = new ArrayList<>();
+        Map<Const, Integer> index = new HashMap<>();
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream cd = new DataOutputStream(code);
+        int n = 0;
+
+        // 후위 순회(재귀하지 않음). 두 번째로 꺼낼 때 명령을 씀
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        ArrayDeque<Boolean> visited = new ArrayDeque<>();
+        stack.push(e.getRoot());
+        visited.push(false);
+        while(!stack.isEmpty()) {
+            Node node = stack.pop();
+            if(!visited.pop()) {
+                stack.push(node);
+                visited.push(true);
+                if(node.args != null)
+                    for(int i = node.args.length - 1; i >= 0; i--) {
+                        stack.push(node.args[i]);
+                        visited.push(false);
+                    }
+                if(node.right != null) {
+                    stack.push(node.right);
+                    visited.push(false);
+                }
+                if(node.left != null) {
+                    stack.push(node.left);
+                    visited.push(false);
+                }
+                continue;
+            }
+
+            int op, arg = 0;
+            switch(node.kind) {
+                case Node.CONST: {
+                    Value v = node.value;
+                    Const key = !v.isNumber() ? new Const(STRING, v.toString(), 0)
+                            : new Const(v.text() == null ? NUMBER : NUMBER_TEXT, v.text(),
+                                        Double.doubleToRawLongBits(v.num()));
+                    op = CONST;
+                    arg = constant(consts, index, key);
+                    break;
+                }
+                case Node.VAR:
+                    op = VAR;
+                    arg = constant(consts, index, new Const(NAME, node.name, 0));
+                    break;
+                case Node.ASSIGN:
+                    op = ASSIGN;
+                    arg = constant(consts, index, new Const(NAME, node.name, 0));
+                    break;
+                case Node.NEG:
+                    op = NEG;
+                    break;
+                case Node.BINARY:
+                    op = BINARY;
+                    arg = node.op;
+                    break;
+                default:
+                    op = CALL;
+                    arg = constant(consts, index, new Const(FUNCTION, node.fn.name, node.fn.arity));
+                    break;
+            }
+            cd.writeByte(op);
+            cd.writeInt(arg);
+            n++;
+        }
+
+        ByteArrayOutputStream rec = new ByteArrayOutputStream(code.size() + 64);
+        DataOutputStream out = new DataOutputStream(rec);
+        writeString(out, e.getSource());
+        out.writeInt(consts.size());
+        for(Const c : consts) {
+            out.writeByte(c.kind);
+            if(c.kind == NUMBER || c.kind == NUMBER_TEXT) out.writeLong(c.bits);
+            if(c.kind != NUMBER) writeString(out, c.text);
+            if(c.kind == FUNCTION) out.writeShort((int) c.bits);
+        }
+        out.writeInt(n);
+        code.writeTo(out);
+        out.writeInt(e.getOptimizations().size());
+        for(String s : e.getOptimizations()) writeString(out, s);
+        out.flush();
+        return rec.toByteArray();
+    }
+
+    // 쓰는 중의 상수(같은 상수는 한 번만 저장)
+    private static final class Const {
+        final int kind;
+        final String text;
+        final long bits;
+
+        Const(int kind, String text, long bits) {
+            this.kind = kind;
+            this.text = text;
+            this.bits = bits;
+        }
+
+        public boolean equals(Object o) {
+            if(!(o instanceof Const)) return false;
+            Const c = (Const) o;
+            return kind == c.kind && bits == c.bits
+                    && (text == null ? c.text == null : text.equals(c.text));
+        }
+
+        public int hashCode() {
+            return (kind * 31 + Long.hashCode(bits)) * 31 + (text == null ? 0 : text.hashCode());
+        }
+    }
+
+    private static int constant(List<Const> consts, Map<Const, Integer> index, Const c) {
+        Integer i = index.get(c);
+        if(i == null) {
+            i = consts.size();
+            consts.add(c);
+            index.put(c, i);
+        }
+        return i;
+    }
+
+    // 수정된 UTF-8(문자 하나를 1~3 바이트로, 서로게이트는 각각 3 바이트)
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        int len = 0;
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            len += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        out.writeInt(len);
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c != 0 && c < 0x80) out.writeByte(c);
+            else if(c < 0x800) {
+                out.writeByte(0xC0 | c >> 6);
+                out.writeByte(0x80 | c & 0x3F);
+            }
+            else {
+                out.writeByte(0xE0 | c >> 12);
+                out.writeByte(0x80 | c >> 6 & 0x3F);
+                out.writeByte(0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    // --- 읽기 ---
+
+    private Expression decode(int i) throws IOException {
+        if(i < 0 || i >= count)
+            throw new IndexOutOfBoundsException("expression " + i + " of " + count);
+        int at = HEADER + i * ENTRY;
+        int pos = (int) map.getLong(at);
+        int len = map.getInt(at + 8);
+        if(crc(map, pos, len) != map.getInt(at + 12))
+            throw new StreamCorruptedException("expression " + i + " checksum mismatch");
+
+        Reader in = new Reader(map, pos, pos + len, i);
+        String source = in.string();
+
+        int nconst = in.count(1);
+        int[] kinds = new int[nconst];
+        Object[] consts = new Object[nconst];
+        for(int k = 0; k < nconst; k++) {
+            kinds[k] = in.u1();
+            switch(kinds[k]) {
+                case NUMBER:
+                    consts[k] = Value.number(Double.longBitsToDouble(in.u8()));
+                    break;
+                case NUMBER_TEXT: {
+                    double d = Double.longBitsToDouble(in.u8());
+                    consts[k] = Value.number(d, in.string());
+                    break;
+                }
+                case STRING:
+                    consts[k] = Value.of(in.string());
+                    break;
+                case NAME:
+                    consts[k] = in.string();
+                    break;
+                case FUNCTION: {
+                    String name = in.string();
+                    int arity = in.u2();
+                    FunctionRegistry.Entry fn = parser.getFunctions().lookup(name);
+                    if(fn == null)
+                        throw new IOException("expression " + i + " calls unknown function " + name);
+                    if(fn.arity != arity)
+                        throw new IOException("expression " + i + " calls " + name + " with "
+                                + arity + " arguments but it takes " + fn.arity);
+                    consts[k] = fn;
+                    break;
+                }
+                default:
+                    throw in.corrupt("unknown constant kind " + kinds[k]);
+            }
+        }
+
+        // 후위 명령으로 트리 재구성
+        int ncode = in.count(5);
+        SymbolTable symbols = parser.getSymbols();
+        Node[] stack = new Node[Math.min(ncode, 16)];
+        int sp = 0;
+        for(int k = 0; k < ncode; k++) {
+            int op = in.u1();
+            int arg = in.s4();
+            Node node;
+            switch(op) {
+                case CONST:
+                    node = Node.constant((Value) in.constant(consts, kinds, arg, NUMBER, NUMBER_TEXT, STRING));
+                    break;
+                case VAR: {
+                    String name = (String) in.constant(consts, kinds, arg, NAME, NAME, NAME);
+                    node = Node.var(symbols.slot(name), name);
+                    break;
+                }
+                case ASSIGN: {
+                    String name = (String) in.constant(consts, kinds, arg, NAME, NAME, NAME);
+                    in.need(sp, 1);
+                    node = Node.assign(symbols.slot(name), name, stack[--sp]);
+                    break;
+                }
+                case NEG:
+                    in.need(sp, 1);
+                    node = Node.neg(stack[--sp]);
+                    break;
+                case BINARY: {
+                    if(arg < 0 || arg > 0xFFFF || "+-*/%^".indexOf(arg) < 0)
+                        throw in.corrupt("unknown operator " + arg);
+                    in.need(sp, 2);
+                    Node r = stack[--sp];
+                    node = Node.binary((char) arg, stack[--sp], r);
+                    break;
+                }
+                case CALL: {
+                    FunctionRegistry.Entry fn = (FunctionRegistry.Entry)
+                            in.constant(consts, kinds, arg, FUNCTION, FUNCTION, FUNCTION);
+                    in.need(sp, fn.arity);
+                    Node[] args = new Node[fn.arity];
+                    sp -= fn.arity;
+                    System.arraycopy(stack, sp, args, 0, fn.arity);
+                    node = Node.call(fn, args);
+                    break;
+                }
+                default:
+                    throw in.corrupt("unknown instruction " + op);
+            }
+            if(sp == stack.length)
+                stack = Arrays.copyOf(stack, sp * 2);
+            stack[sp++] = node;
+        }
+        if(sp != 1)
+            throw in.corrupt("instructions leave " + sp + " values on the stack");
+
+        int nopt = in.count(4);
+        List<String> opts = nopt == 0 ? Collections.<String>emptyList() : new ArrayList<>(nopt);
+        for(int k = 0; k < nopt; k++) opts.add(in.string());
+        if(in.pos != in.end)
+            throw in.corrupt((in.end - in.pos) + " unused bytes");
+
+        return new Expression(source, stack[0], symbols, opts);
+    }
+
+    // 매핑된 수식 하나를 읽는 커서(절대 위치로 읽으므로 여러 스레드가 함께 써도 됨)
+    private static final class Reader {
+        final ByteBuffer buf;
+        final int end;
+        final int index;
+        int pos;
+
+        Reader(ByteBuffer buf, int pos, int end, int index) {
+            this.buf = buf;
+            this.pos = pos;
+            this.end = end;
+            this.index = index;
+        }
+
+        StreamCorruptedException corrupt(String msg) {
+            return new StreamCorruptedException("expression " + index + ": " + msg);
+        }
+
+        private void ensure(int n) throws StreamCorruptedException {
+            if(n < 0 || n > end - pos) throw corrupt("truncated record");
+        }
+
+        int u1() throws StreamCorruptedException {
+            ensure(1);
+            return buf.get(pos++) & 0xFF;
+        }
+
+        int u2() throws StreamCorruptedException {
+            ensure(2);
+            int v = buf.getShort(pos) & 0xFFFF;
+            pos += 2;
+            return v;
+        }
+
+        int s4() throws StreamCorruptedException {
+            ensure(4);
+            int v = buf.getInt(pos);
+            pos += 4;
+            return v;
+        }
+
+        long u8() throws StreamCorruptedException {
+            ensure(8);
+            long v = buf.getLong(pos);
+            pos += 8;
+            return v;
+        }
+
+        // 항목 수(항목마다 최소 size 바이트이므로 남은 크기로 검사)
+        int count(int size) throws StreamCorruptedException {
+            int n = s4();
+            if(n < 0 || (long) n * size > end - pos) throw corrupt("bad count " + n);
+            return n;
+        }
+
+        String string() throws StreamCorruptedException {
+            int len = s4();
+            ensure(len);
+            char[] chars = new char[len];
+            int n = 0, stop = pos + len;
+            while(pos < stop) {
+                int a = buf.get(pos++) & 0xFF;
+                if(a < 0x80) chars[n++] = (char) a;
+                else if((a & 0xE0) == 0xC0 && pos < stop)
+                    chars[n++] = (char) ((a & 0x1F) << 6 | cont(stop));
+                else if((a & 0xF0) == 0xE0 && pos + 1 < stop)
+                    chars[n++] = (char) ((a & 0x0F) << 12 | cont(stop) << 6 | cont(stop));
+                else throw corrupt("malformed string");
+            }
+            return new String(chars, 0, n);
+        }
+
+        private int cont(int stop) throws StreamCorruptedException {
+            int b = buf.get(pos++) & 0xFF;
+            if((b & 0xC0) != 0x80) throw corrupt("malformed string");
+            return b & 0x3F;
+        }
+
+        // 상수 번호 확인(종류가 a, b, c 중 하나여야 함)
+        Object constant(Object[] consts, int[] kinds, int i, int a, int b, int c)
+                throws StreamCorruptedException {
+            if(i < 0 || i >= consts.length) throw corrupt("constant " + i + " out of range");
+            int k = kinds[i];
+            if(k != a && k != b && k != c) throw corrupt("constant " + i + " has wrong kind " + k);
+            return consts[i];
+        }
+
+        void need(int sp, int n) throws StreamCorruptedException {
+            if(sp < n) throw corrupt("stack underflow");
+        }
+    }
+
+    private static int crc(byte[] b, int off, int len) {
+        CRC32 c = new CRC32();
+        c.update(b, off, len);
+        return (int) c.getValue();
+    }
+
+    private static int crc(ByteBuffer map, int off, int len) {
+        CRC32 c = new CRC32();
+        c.update(map.slice(off, len));
+        return (int) c.getValue();
+    }
+}
@@ -0,0 +1,218 @@
+package com.company;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+   로컬 소켓으로 수식을 받아 계산해 주는 서버.
+   한 줄에 수식 하나를 받고 한 줄에 결과 하나를 돌려준다. 오류는
+   "Error: " 와 오류 메시지(BatchEvaluator 와 같음).
+
+   여러 프로세스가 이 서버 하나를 함께 쓰면 JIT 워밍업을 공유하고, 연결이
+   유지되는 동안은 그 연결의 컴파일된 수식 캐시를 쓴다. 연결마다 가상 스레드 하나가
+   줄을 차례로 계산하므로 응답 순서는 요청 순서와 같다. 클라이언트는 응답을
+   읽기 전에 여러 줄을 보내도 되고(파이프라이닝), 서버는 읽어 둔 요청이
+   남아 있는 동안 응답을 모았다가 한꺼번에 보낸다. 다만 응답을 전혀 읽지
+   않고 계속 보내면 소켓 버퍼가 찬 뒤 양쪽이 멈추므로, 많이 보내는
+   클라이언트는 다른 스레드에서 응답을 읽어야 한다.
+   변수는 연결마다 따로 있다(한 연결 안에서는 앞 줄의 할당이 보임).
+   연결마다 parsers 에서 새 Parser 를 받으므로 변수 이름의 슬롯(SymbolTable)도
+   연결마다 따로 있고, 그 수는 MAX_VARIABLES 로 제한한다. 한 클라이언트가
+   새 이름을 계속 보내도 그 연결에서만 "Too many variables" 오류가 난다.
+   MAX_LINE 자보다 긴 요청 줄은 끝까지 읽어 버리고 "Error: Line too long" 을 보낸다.
+*/
+final class ExpressionServer implements Closeable {
+    static final int MAX_VARIABLES = 10_000;   // 연결당 변수 이름 수
+    static final int MAX_LINE = 64 * 1024;     // 요청 한 줄의 최대 길이(자)
+
+    private final Supplier<Parser> parsers;    // 연결마다 새 Parser
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final Path socketFile;    // Unix 도메인 소켓 파일(TCP 이면 null)
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    private ExpressionServer(Supplier<Parser> parsers, ServerSocketChannel server, Path socketFile)
+            throws IOException {
+        this.parsers = parsers;
+        this.server = server;
+        this.address = server.getLocalAddress();
+        this.socketFile = socketFile;
+        this.acceptor = Thread.ofVirtual().name("expression-server").start(this::accept);
+    }
+
+    // 루프백 주소의 TCP 포트에서 시작(0 이면 빈 포트를 골라 getAddress()로 알려 줌)
+    static ExpressionServer tcp(Supplier<Parser> parsers, int port) throws IOException {
+        ServerSocketChannel ch = ServerSocketChannel.open(StandardProtocolFamily.INET);
+        try {
+            ch.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch(IOException exc) {
+            ch.close();
+            throw exc;
+        }
+        return new ExpressionServer(parsers, ch, null);
+    }
+
+    // Unix 도메인 소켓에서 시작(이미 있는 소켓 파일은 지우고 새로 만듦)
+    static ExpressionServer unix(Supplier<Parser> parsers, Path path) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel ch = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            ch.bind(UnixDomainSocketAddress.of(path));
+        } catch(IOException exc) {
+            ch.close();
+            throw exc;
+        }
+        return new ExpressionServer(parsers, ch, path);
+    }
+
+    SocketAddress getAddress() {
+        return address;
+    }
+
+    // 연결을 받아 연결마다 가상 스레드를 시작
+    private void accept() {
+        try {
+            for(;;) {
+                SocketChannel ch = server.accept();
+                clients.add(ch);
+                Thread.ofVirtual().name("expression-client").start(() -> serve(ch));
+            }
+        } catch(ClosedChannelException exc) {
+            // close()로 종료
+        } catch(IOException exc) {
+            System.err.println("expression server stopped: " + exc);
+        }
+    }
+
+    // 연결 하나의 요청을 차례로 계산
+    private void serve(SocketChannel ch) {
+        try(ch;
+            LineReader in = new LineReader(new InputStreamReader(
+                    Channels.newInputStream(ch), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(ch), StandardCharsets.UTF_8))) {
+            Parser parser = parsers.get();
+            if(parser.getSymbols().getLimit() > MAX_VARIABLES)
+                parser.getSymbols().setLimit(MAX_VARIABLES);
+            EvaluationContext ctx = parser.newContext();
+            String line;
+            while((line = in.readLine()) != null) {
+                if(in.tooLong)
+                    out.write("Error: Line too long");
+                else {
+                    try {
+                        EvalResult r = parser.tryEvaluate(line, ctx);
+                        if(r.isError()) out.write("Error: " + r.getMessage());
+                        else out.write(r.getValue());
+                    } catch(RuntimeException | StackOverflowError exc) {
+                        out.write("Error: " + exc);   // 사용자 함수의 예외도 연결을 끊지 않음
+                    }
+                }
+                out.write('\n');
+                if(!in.ready())     // 읽어 둔 요청을 다 처리했으면 응답을 보냄
+                    out.flush();
+            }
+        } catch(IOException exc) {
+            // 클라이언트가 연결을 끊음
+        } finally {
+            clients.remove(ch);
+        }
+    }
+
+    /* 길이를 제한하는 줄 읽기. BufferedReader.readLine()은 줄 끝이 올 때까지
+       모두 메모리에 쌓으므로 끝나지 않는 줄 하나로 힙을 다 쓸 수 있다.
+       줄 끝은 \n(앞의 \r 은 뗌). */
+    private static final class LineReader implements Closeable {
+        private final Reader in;
+        private final char[] buf = new char[8192];
+        private int pos, end;
+        private final StringBuilder line = new StringBuilder();
+        boolean tooLong;    // 마지막으로 읽은 줄이 MAX_LINE 보다 길었는지(그 줄은 버림)
+
+        LineReader(Reader in) {
+            this.in = in;
+        }
+
+        // 다음 줄(입력 끝이면 null)
+        String readLine() throws IOException {
+            line.setLength(0);
+            tooLong = false;
+            boolean any = false;
+            for(;;) {
+                if(pos == end) {
+                    pos = 0;
+                    end = Math.max(0, in.read(buf, 0, buf.length));
+                    if(end == 0) {
+                        if(!any) return null;
+                        break;
+                    }
+                }
+                any = true;
+                int i = pos;
+                while(i < end && buf[i] != '\n') i++;
+                if(!tooLong) {
+                    if(line.length() + (i - pos) > MAX_LINE) {
+                        tooLong = true;
+                        line.setLength(0);
+                    }
+                    else line.append(buf, pos, i - pos);
+                }
+                pos = i;
+                if(i < end) {
+                    pos++;
+                    break;
+                }
+            }
+            int n = line.length();
+            if(n > 0 && line.charAt(n - 1) == '\r')
+                line.setLength(n - 1);
+            return line.toString();
+        }
+
+        // 기다리지 않고 읽을 수 있는 입력이 있는지
+        boolean ready() throws IOException {
+            return pos < end || in.ready();
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // close()될 때까지 기다림
+    void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    // 새 연결을 받지 않고 열린 연결을 모두 닫음
+    public void close() throws IOException {
+        server.close();
+        for(SocketChannel ch : clients) ch.close();
+        try {
+            acceptor.join();
+        } catch(InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        if(socketFile != null) Files.deleteIfExists(socketFile);
+    }
+}
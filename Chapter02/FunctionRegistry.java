@@ -0,0 +1,221 @@
+package com.company;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/*
+   수식에서 호출할 수 있는 함수 목록.
+   함수 이름은 파싱할 때 한 번만 찾아 Entry 를 노드에 넣어 두므로
+   계산할 때는 이름을 비교하지 않고 바로 호출한다.
+   숫자 함수는 DoubleUnaryOperator/DoubleBinaryOperator 와 같은 일을 하는
+   MethodHandle 을 함께 가지며, 바이트코드 백엔드는 이 핸들을 상수로
+   호출하므로 JIT 가 함수 본문까지 인라인할 수 있다.
+
+   기본 함수: sqrt, abs, exp, log, log10, floor, ceil, round(x), min(a, b), max(a, b), len(s)
+   이름은 대소문자를 구분하지 않는다. 함수를 등록하거나 바꾸는 것은
+   그 함수를 쓰는 수식을 컴파일하기 전에 해야 한다(이미 컴파일된 수식은
+   예전 Entry 를 계속 사용).
+*/
+final class FunctionRegistry {
+    // 숫자가 아닌 인자도 받는 일반 함수
+    @FunctionalInterface
+    interface ValueFunction {
+        Value apply(Value[] args) throws ParserException;
+    }
+
+    private static final MethodHandle UNARY, BINARY;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            UNARY = lookup.findVirtual(DoubleUnaryOperator.class, "applyAsDouble",
+                    MethodType.methodType(double.class, double.class));
+            BINARY = lookup.findVirtual(DoubleBinaryOperator.class, "applyAsDouble",
+                    MethodType.methodType(double.class, double.class, double.class));
+        } catch(ReflectiveOperationException exc) {
+            throw new ExceptionInInitializerError(exc);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> functions = new ConcurrentHashMap<>();
+
+    // 기본 함수가 등록된 목록
+    FunctionRegistry() {
+        defineUnary("sqrt", Math::sqrt);
+        defineUnary("abs", Math::abs);
+        defineUnary("exp", Math::exp);
+        defineUnary("log", Math::log);
+        defineUnary("log10", Math::log10);
+        defineUnary("floor", Math::floor);
+        defineUnary("ceil", Math::ceil);
+        defineUnary("round", FunctionRegistry::round);
+        defineBinary("min", Math::min);
+        defineBinary("max", Math::max);
+        put(new Entry("len", 1, null, null, null,
+                args -> Value.number(args[0].length()), true));
+    }
+
+    // 반올림(.5 는 양의 무한대 방향). 정수 범위를 넘는 값과 NaN, 무한대는 그대로
+    static double round(double x) {
+        return Math.abs(x) < 0x1p52 ? (double) Math.round(x) : x;
+    }
+
+    // 이름에 해당하는 함수(없으면 null)
+    Entry lookup(String name) {
+        return functions.get(name.toUpperCase(Locale.ROOT));
+    }
+
+    // 인자가 하나인 숫자 함수 등록
+    void registerUnary(String name, DoubleUnaryOperator f) {
+        put(new Entry(name, 1, f, null, UNARY.bindTo(f), null, false));
+    }
+
+    // 인자가 두 개인 숫자 함수 등록
+    void registerBinary(String name, DoubleBinaryOperator f) {
+        put(new Entry(name, 2, null, f, BINARY.bindTo(f), null, false));
+    }
+
+    // 숫자 함수 등록. handle 의 인자와 반환형은 모두 double 이어야 한다.
+    void register(String name, MethodHandle handle) {
+        MethodType type = handle.type();
+        for(Class<?> c : type.parameterArray())
+            if(c != double.class)
+                throw new IllegalArgumentException("parameters must be double: " + type);
+        if(type.returnType() != double.class)
+            throw new IllegalArgumentException("return type must be double: " + type);
+
+        int arity = type.parameterCount();
+        if(arity == 1) {
+            put(new Entry(name, 1, unaryOf(handle), null, handle, null, false));
+            return;
+        }
+        if(arity == 2) {
+            put(new Entry(name, 2, null, binaryOf(handle), handle, null, false));
+            return;
+        }
+        ValueFunction general = args -> {
+            Object[] a = new Object[args.length];
+            for(int i = 0; i < args.length; i++) a[i] = number(args[i]);
+            return Value.number((Double) invoke(handle, a));
+        };
+        put(new Entry(name, arity, null, null, handle, general, false));
+    }
+
+    // 문자열 인자도 받는 함수 등록
+    void register(String name, int arity, ValueFunction f) {
+        put(new Entry(name, arity, null, null, null, f, false));
+    }
+
+    // 기본 함수는 결과가 인자에만 달려 있으므로 상수 인자이면 미리 계산할 수 있다
+    private void defineUnary(String name, DoubleUnaryOperator f) {
+        put(pureUnary(name, f));
+    }
+
+    private void defineBinary(String name, DoubleBinaryOperator f) {
+        put(pureBinary(name, f));
+    }
+
+    // 등록하지 않고 노드에 바로 넣는 기본 함수(도함수 등에서 사용)
+    static Entry pureUnary(String name, DoubleUnaryOperator f) {
+        return new Entry(name, 1, f, null, UNARY.bindTo(f), null, true);
+    }
+
+    static Entry pureBinary(String name, DoubleBinaryOperator f) {
+        return new Entry(name, 2, null, f, BINARY.bindTo(f), null, true);
+    }
+
+    private void put(Entry e) {
+        functions.put(e.name, e);
+    }
+
+    // (double)double 핸들을 인터프리터에서 부를 수 있는 함수로 감쌈
+    private static DoubleUnaryOperator unaryOf(MethodHandle handle) {
+        return x -> {
+            try {
+                return (double) handle.invokeExact(x);
+            } catch(RuntimeException | Error exc) {
+                throw exc;
+            } catch(Throwable exc) {
+                throw new IllegalStateException(exc);
+            }
+        };
+    }
+
+    private static DoubleBinaryOperator binaryOf(MethodHandle handle) {
+        return (x, y) -> {
+            try {
+                return (double) handle.invokeExact(x, y);
+            } catch(RuntimeException | Error exc) {
+                throw exc;
+            } catch(Throwable exc) {
+                throw new IllegalStateException(exc);
+            }
+        };
+    }
+
+    private static Object invoke(MethodHandle handle, Object[] args) {
+        try {
+            return handle.invokeWithArguments(args);
+        } catch(RuntimeException | Error exc) {
+            throw exc;
+        } catch(Throwable exc) {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    // 숫자 인자(문자열이면 오류)
+    private static double number(Value v) throws ParserException {
+        if(!v.isNumber())
+            Parser.handleErr(Parser.OPERATOR);
+        return v.num();
+    }
+
+    // 파싱할 때 찾아 노드에 넣어 두는 함수 정보
+    static final class Entry {
+        final String name;                 // 대문자 이름
+        final int arity;                   // 인자 수
+        final DoubleUnaryOperator unary;   // 인자 하나인 숫자 함수(아니면 null)
+        final DoubleBinaryOperator binary; // 인자 둘인 숫자 함수(아니면 null)
+        final MethodHandle handle;         // (double...)double 핸들(숫자 함수가 아니면 null)
+        final ValueFunction general;       // 그 밖의 함수
+        final boolean pure;                // 상수 인자이면 미리 계산해도 되는지
+
+        private Entry(String name, int arity, DoubleUnaryOperator unary, DoubleBinaryOperator binary,
+                      MethodHandle handle, ValueFunction general, boolean pure) {
+            this.name = name.toUpperCase(Locale.ROOT);
+            this.arity = arity;
+            this.unary = unary;
+            this.binary = binary;
+            this.handle = handle;
+            this.general = general;
+            this.pure = pure;
+        }
+
+        // 숫자만 받고 숫자를 돌려주는 함수인지(바이트코드, 열 단위 계산 가능)
+        boolean isNumeric() {
+            return handle != null;
+        }
+
+        Value apply(Value a) throws ParserException {
+            if(unary != null)
+                return Value.number(unary.applyAsDouble(number(a)));
+            return apply(new Value[] { a });
+        }
+
+        Value apply(Value a, Value b) throws ParserException {
+            if(binary != null)
+                return Value.number(binary.applyAsDouble(number(a), number(b)));
+            return apply(new Value[] { a, b });
+        }
+
+        Value apply(Value[] args) throws ParserException {
+            if(unary != null) return apply(args[0]);
+            if(binary != null) return apply(args[0], args[1]);
+            return general.apply(args);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.company;
+
+/*
+   숫자 수식의 값과 기울기(여러 변수에 대한 편도함수)를 함께 계산한다.
+   편도함수는 Differentiator 로 한 번만 구하고, 값과 모든 편도함수를
+   하나의 바이트코드 함수(BytecodeCompiler.compile(Expression[]))로 컴파일한다.
+   이 함수는 한 번 호출로 모든 결과를 쓰며, 값과 편도함수들에 함께 나오는
+   부분 식(예: x * y 의 x, y 나 log(a), a ^ b)은 한 번만 계산한다.
+   evaluate() 한 번으로 [값, ∂/∂변수1, ∂/∂변수2, ...] 을 얻는다.
+*/
+final class Gradient {
+    private final Expression value;
+    private final Expression[] partials;
+    private final int[] slots;              // 변수 슬롯(SymbolTable)
+    private final int target;               // 할당 수식(A = ...)이면 A 의 슬롯, 아니면 -1
+    private final VectorFunction fn;
+
+    Gradient(Expression e, String... vars) throws ParserException {
+        value = e;
+        partials = new Expression[vars.length];
+        slots = new int[vars.length];
+        Node root = e.getRoot();
+        target = root.kind == Node.ASSIGN ? root.slot : -1;
+
+        // 할당은 evaluate()에서 모든 결과를 계산한 뒤에 한다(편도함수가 바뀐 값을 읽지 않도록)
+        Expression[] outputs = new Expression[vars.length + 1];
+        outputs[0] = target >= 0 ? new Expression(e.getSource(), root.left, e.getSymbols()) : e;
+        for(int i = 0; i < vars.length; i++) {
+            slots[i] = e.getSymbols().slot(vars[i]);
+            partials[i] = Differentiator.derivative(e, vars[i]);
+            outputs[i + 1] = partials[i];
+        }
+        fn = BytecodeCompiler.compile(outputs);
+    }
+
+    Expression getValue() {
+        return value;
+    }
+
+    // i 번째 변수에 대한 편도함수
+    Expression getPartial(int i) {
+        return partials[i];
+    }
+
+    // i 번째 변수의 슬롯(vars 배열의 인덱스)
+    int slot(int i) {
+        return slots[i];
+    }
+
+    int size() {
+        return partials.length;
+    }
+
+    // vars 는 슬롯 순서의 변수 값. [값, 편도함수...] 를 반환
+    double[] evaluate(double[] vars) throws ParserException {
+        double[] out = new double[partials.length + 1];
+        evaluate(vars, out);
+        return out;
+    }
+
+    // out[0] 에 값, out[i + 1] 에 i 번째 편도함수를 넣는다
+    void evaluate(double[] vars, double[] out) throws ParserException {
+        fn.apply(vars, out);
+        if(target >= 0)
+            vars[target] = out[0];
+    }
+}
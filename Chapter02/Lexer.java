@@ -0,0 +1,134 @@
+package com.company;
+/*
+   수식 문자열의 토큰 분석기.
+   토큰을 문자열로 만들지 않고 원본 char 배열에서의
+   시작/끝 위치와 타입만 기록한다. 문자열이 꼭 필요한
+   상수나 변수 이름에서만 text()로 잘라낸다.
+*/
+final class Lexer {
+    // These are the token types.
+    static final int NONE = 0;         //표현식의 끝(EOE)
+    static final int DELIMITER = 1;    //문자
+    static final int VARIABLE = 2;     //변수
+    static final int NUMBER = 3;       //숫자
+    static final int STRING = 4;       //문자열
+
+    // 연산자형 문자 표
+    private static final boolean[] DELIMS = new boolean[128];
+    static {
+        for(char c : " +-/*%^=(),".toCharArray()) DELIMS[c] = true;
+    }
+
+    private final char[] src;  // 수식 문자 배열
+    private int pos;           // 다음 토큰을 읽을 위치
+
+    int type;                  // 현재 토큰 타입
+    int start;                 // 현재 토큰 시작 위치
+    int end;                   // 현재 토큰 끝 위치(포함하지 않음)
+
+    int error = -1;            // 처음 발생한 오류 코드(없으면 -1)
+    int errorPos = -1;         // 그 오류의 위치
+
+    Lexer(String exp) {
+        src = exp.toCharArray();
+    }
+
+    // 다음 토큰으로 이동하고 그 타입을 반환
+    int next() {
+        // 공백이면 다음으로 넘어감
+        while(pos < src.length && Character.isWhitespace(src[pos])) ++pos;
+
+        start = end = pos;
+        type = NONE;
+
+        // 표현의 마지막
+        if(pos == src.length) return type;
+
+        char c = src[pos];
+        if(isDelim(c)) { // 연산자형
+            end = ++pos;
+            type = DELIMITER;
+        }
+        else if(Character.isLetter(c)) { // 변수형
+            scanWord();
+            type = VARIABLE;
+        }
+        else if(Character.isDigit(c)) { // 숫자형
+            scanWord();
+            type = NUMBER;
+        }
+        else if(c == '"') {  //문자열형
+            scanString();
+            type = STRING;
+            // 문자열이 "로 안끝나면 오류
+            if(pos == src.length && src[pos - 1] != '"')
+                fail(Parser.SYNTAX);
+        }
+        // 정의되지 않은 형은 표현식 종료(NONE)로 취급하고 위치를 옮기지 않는다
+        return type;
+    }
+
+    // 다음 연산자형 문자까지 읽음
+    private void scanWord() {
+        while(pos < src.length && !isDelim(src[pos])) pos++;
+        end = pos;
+    }
+
+    // 문자열 상수는 쉼표(함수 인자 구분자)에서 끊지 않음
+    private void scanString() {
+        while(pos < src.length && (src[pos] == ',' || !isDelim(src[pos]))) pos++;
+        end = pos;
+    }
+
+    /* 오류 기록(처음 오류만 남김). 예외를 던지는 대신 수식 끝으로 이동해
+       파싱이 더 진행되지 않게 한다. */
+    void fail(int code) {
+        fail(code, start);
+    }
+
+    void fail(int code, int position) {
+        if(error < 0) {
+            error = code;
+            errorPos = position;
+        }
+        start = end = pos = src.length;
+        type = NONE;
+    }
+
+    // 현재 토큰이 주어진 연산자인지 검사
+    boolean is(char op) {
+        return type == DELIMITER && src[start] == op;
+    }
+
+    // 현재 토큰이 연산자이면 그 문자, 아니면 0
+    char op() {
+        return type == DELIMITER ? src[start] : 0;
+    }
+
+    // 토큰을 소비하지 않고 다음 토큰이 주어진 연산자인지 미리 확인
+    boolean peek(char op) {
+        int i = end;
+        while(i < src.length && Character.isWhitespace(src[i])) ++i;
+        return i < src.length && src[i] == op;
+    }
+
+    char firstChar() {
+        return src[start];
+    }
+
+    // 현재 토큰 문자열(STRING 은 큰따옴표 제거)
+    String text() {
+        if(type != STRING)
+            return new String(src, start, end - start);
+
+        StringBuilder sb = new StringBuilder(end - start);
+        for(int i = start; i < end; i++)
+            if(src[i] != '"') sb.append(src[i]);
+        return sb.toString();
+    }
+
+    // 연산자형 검사 메소드
+    static boolean isDelim(char c) {
+        return c < 128 && DELIMS[c];
+    }
+}
@@ -1,5 +1,9 @@
 package com.company;
 import java.io.*;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 
 public class Main {
@@ -7,6 +11,18 @@ public class Main {
     public static void main(String[] args) throws IOException {
         String expr;
 
+        // --serve <포트 또는 소켓 파일> 이면 서버로 실행
+        if(args.length == 2 && args[0].equals("--serve")) {
+            serve(args[1]);
+            return;
+        }
+
+        // 인자가 두 개이면 입력 파일의 수식을 모두 계산해 출력 파일에 씀
+        if(args.length == 2) {
+            batch(args[0], args[1]);
+            return;
+        }
+
         BufferedReader br = new
                 BufferedReader(new InputStreamReader(System.in));
         Parser p = new Parser();
@@ -25,4 +41,40 @@ public class Main {
             }
         }
     }
+
+    // 배치 모드: java com.company.Main <입력 파일> <출력 파일>
+    private static void batch(String in, String out) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Parser p = new Parser(new ExpressionCache(10_000));
+            long lines = new BatchEvaluator(p, pool, threads * 4).run(Paths.get(in), Paths.get(out));
+            System.out.println(lines + " expressions evaluated.");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // 서버 모드: java com.company.Main --serve 7070 (루프백 TCP)
+    //           java com.company.Main --serve /tmp/expr.sock (Unix 도메인 소켓)
+    private static void serve(String where) throws IOException {
+        // 연결마다 변수와 캐시를 따로 가진 Parser
+        Supplier<Parser> parsers = () -> new Parser(new ExpressionCache(1_000));
+        ExpressionServer server = where.chars().allMatch(Character::isDigit)
+                ? ExpressionServer.tcp(parsers, Integer.parseInt(where))
+                : ExpressionServer.unix(parsers, Paths.get(where));
+        System.out.println("Serving expressions on " + server.getAddress());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch(IOException exc) {
+                System.err.println(exc);
+            }
+        }));
+        try {
+            server.join();
+        } catch(InterruptedException exc) {
+            server.close();
+        }
+    }
 }
@@ -0,0 +1,118 @@
+package com.company;
+/*
+   컴파일된 수식을 구성하는 트리 노드.
+   Parser.compile()이 한 번 만들어 두면 변경되지 않는다.
+*/
+final class Node {
+    // 노드 종류
+    static final int CONST = 0;   // 숫자, 문자열 상수
+    static final int VAR = 1;     // 변수 참조
+    static final int ASSIGN = 2;  // 변수 할당(A = ...)
+    static final int NEG = 3;     // 단항 -
+    static final int BINARY = 4;  // 이항 연산(+ - * / % ^)
+    static final int CALL = 5;    // 함수 호출(sqrt(x) 등)
+
+    final int kind;
+    final char op;        // BINARY 연산자
+    final Value value;    // CONST 값
+    final int slot;       // VAR, ASSIGN 변수 슬롯(SymbolTable)
+    final String name;    // VAR, ASSIGN 변수 이름
+    final Node left;      // 피연산자(NEG, ASSIGN은 left만 사용)
+    final Node right;
+    final FunctionRegistry.Entry fn;  // CALL 함수
+    final Node[] args;                // CALL 인자
+
+    private Node(int kind, char op, Value value, int slot, String name, Node left, Node right) {
+        this.kind = kind;
+        this.op = op;
+        this.value = value;
+        this.slot = slot;
+        this.name = name;
+        this.left = left;
+        this.right = right;
+        this.fn = null;
+        this.args = null;
+    }
+
+    private Node(FunctionRegistry.Entry fn, Node[] args) {
+        this.kind = CALL;
+        this.op = '\0';
+        this.value = null;
+        this.slot = -1;
+        this.name = null;
+        this.left = null;
+        this.right = null;
+        this.fn = fn;
+        this.args = args;
+    }
+
+    static Node constant(Value value) {
+        return new Node(CONST, '\0', value, -1, null, null, null);
+    }
+
+    static Node var(int slot, String name) {
+        return new Node(VAR, '\0', null, slot, name, null, null);
+    }
+
+    static Node assign(int slot, String name, Node expr) {
+        return new Node(ASSIGN, '=', null, slot, name, expr, null);
+    }
+
+    static Node neg(Node operand) {
+        return new Node(NEG, '-', null, -1, null, operand, null);
+    }
+
+    static Node binary(char op, Node left, Node right) {
+        return new Node(BINARY, op, null, -1, null, left, right);
+    }
+
+    static Node call(FunctionRegistry.Entry fn, Node[] args) {
+        return new Node(fn, args);
+    }
+
+    // 수식 형태의 문자열(최적화 보고서, 디버깅용). 깊은 부분은 ... 로 줄임
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        append(sb, 0);
+        return sb.toString();
+    }
+
+    private void append(StringBuilder sb, int depth) {
+        if(depth > 16) {
+            sb.append("...");
+            return;
+        }
+        switch(kind) {
+            case CONST:
+                if(value.isNumber()) sb.append(value);
+                else sb.append('"').append(value).append('"');
+                break;
+            case VAR:
+                sb.append(name);
+                break;
+            case ASSIGN:
+                sb.append(name).append(" = ");
+                left.append(sb, depth + 1);
+                break;
+            case CALL:
+                sb.append(fn.name).append('(');
+                for(int i = 0; i < args.length; i++) {
+                    if(i > 0) sb.append(", ");
+                    args[i].append(sb, depth + 1);
+                }
+                sb.append(')');
+                break;
+            case NEG:
+                sb.append('-');
+                left.append(sb, depth + 1);
+                break;
+            default:
+                sb.append('(');
+                left.append(sb, depth + 1);
+                sb.append(' ').append(op).append(' ');
+                right.append(sb, depth + 1);
+                sb.append(')');
+                break;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.company;
+
+// 숫자 수식을 변수 배열(인덱스는 SymbolTable 슬롯)에 대해 계산하는 함수
+@FunctionalInterface
+interface NumericFunction {
+    double apply(double[] vars) throws ParserException;
+}
@@ -0,0 +1,175 @@
+package com.company;
+
+import java.math.BigDecimal;
+
+/*
+   수식 트리 계산에 쓰이는 연산자 구현.
+   문자열 확장(+ 연결, - 제거, * 반복)을 포함한다.
+*/
+final class Operators {
+    // 정확한 거듭제곱(exact 모드)을 계산하는 최대 지수
+    static final int MAX_EXACT_EXPONENT = 999_999;
+
+    // 문자열 결과의 기본 최대 길이
+    static final int MAX_STRING_LENGTH = 1 << 24;
+
+    private Operators() {}
+
+    // 이항 연산
+    static Value apply(char op, Value result, Value partialResult) throws ParserException
+    {
+        return apply(op, result, partialResult, MAX_STRING_LENGTH);
+    }
+
+    // maxLength 는 +, * 로 만들 수 있는 문자열의 최대 길이
+    static Value apply(char op, Value result, Value partialResult, int maxLength) throws ParserException
+    {
+        switch(op) {
+            case '+': return add(result, partialResult, maxLength);
+            case '-': return sub(result, partialResult);
+            case '*': return mul(result, partialResult, maxLength);
+            case '/': return div(result, partialResult);
+            case '%': return mod(result, partialResult);
+            default:  return pow(result, partialResult);
+        }
+    }
+
+    static Value add(Value result, Value partialResult, int maxLength) throws ParserException
+    {
+        if(result.isNumber() && partialResult.isNumber())
+            return Value.number(result.num() + partialResult.num());
+        checkLength((long) result.length() + partialResult.length(), maxLength);
+        return Value.of(Rope.concat(result.rope(), partialResult.rope()));
+    }
+
+    static Value sub(Value result, Value partialResult)
+    {
+        if(result.isNumber() && partialResult.isNumber())
+            return Value.number(result.num() - partialResult.num());
+        return Value.of(result.toString().replace(partialResult.toString(), ""));
+    }
+
+    static Value mul(Value result, Value partialResult, int maxLength) throws ParserException
+    {
+        if(result.isNumber() && partialResult.isNumber())
+            return Value.number(result.num() * partialResult.num());
+        if(!result.isNumber() && partialResult.isNumber())     //문자열*숫자인 경우
+            return repeat(result, partialResult.num(), maxLength);
+        if(result.isNumber() && !partialResult.isNumber())     //숫자*문자열인 경우
+            return repeat(partialResult, result.num(), maxLength);
+        Parser.handleErr(Parser.OPERATOR);
+        return null;
+    }
+
+    // 문자열 반복(음수 횟수는 오류)
+    private static Value repeat(Value s, double count, int maxLength) throws ParserException
+    {
+        if(count < 0)
+            Parser.handleErr(Parser.OPERATOR);
+        int n = (int) count;
+        checkLength((long) s.length() * n, maxLength);
+        return Value.of(Rope.repeat(s.rope(), n));
+    }
+
+    // 문자열 결과 길이 제한 검사
+    private static void checkLength(long length, int maxLength) throws ParserException
+    {
+        if(length > maxLength)
+            Parser.handleErr(Parser.TOOLONG);
+    }
+
+    static Value div(Value result, Value partialResult) throws ParserException
+    {
+        if(!result.isNumber() || !partialResult.isNumber())
+            Parser.handleErr(Parser.OPERATOR);
+        if(partialResult.num() == 0.0)
+            Parser.handleErr(Parser.DIVBYZERO);
+        return Value.number(result.num() / partialResult.num());
+    }
+
+    static Value mod(Value result, Value partialResult) throws ParserException
+    {
+        if(!result.isNumber() || !partialResult.isNumber())
+            Parser.handleErr(Parser.OPERATOR);
+        if(partialResult.num() == 0.0)
+            Parser.handleErr(Parser.DIVBYZERO);
+        return Value.number(result.num() % partialResult.num());
+    }
+
+    // 지수
+    static Value pow(Value result, Value partialResult) throws ParserException
+    {
+        return pow(result, partialResult, false);
+    }
+
+    /* exact 이면 정수 지수의 거듭제곱을 BigDecimal 로 정확히 계산하고,
+       double 로 정확히 표현되지 않거나 2^53 이상인 결과는
+       그 정확한 10진 값을 표기로 남긴다. */
+    static Value pow(Value result, Value partialResult, boolean exact) throws ParserException
+    {
+        if(!result.isNumber() || !partialResult.isNumber())
+            Parser.handleErr(Parser.OPERATOR);
+
+        double r = pow(result.num(), partialResult.num());
+        if(exact) {
+            double e = partialResult.num();
+            if(e >= 0 && e <= MAX_EXACT_EXPONENT && e == (int) e) {
+                BigDecimal x = exactPow(result, (int) e);
+                if(x != null && (Double.isInfinite(r) || Math.abs(r) >= 0x1p53 ||
+                        x.compareTo(new BigDecimal(r)) != 0))
+                    return Value.number(x.doubleValue(), x.toPlainString());
+            }
+        }
+        return Value.number(r);
+    }
+
+    private static BigDecimal exactPow(Value base, int e)
+    {
+        double b = base.num();
+        if(Double.isNaN(b) || Double.isInfinite(b))
+            return null;
+        BigDecimal x;
+        try {
+            x = new BigDecimal(base.toString().trim());    // 원래 표기(1.1 등)를 그대로 사용
+        } catch(NumberFormatException exc) {
+            x = BigDecimal.valueOf(b);                     // 16진수, 접미사 표기
+        }
+        return x.stripTrailingZeros().pow(e);    // 정수 밑은 BigInteger 거듭제곱과 같음
+    }
+
+    /* 숫자 지수.
+       0 이상의 정수 지수는 제곱을 반복하는 방법으로 O(log n) 번만 곱하고,
+       음수나 정수가 아닌 지수는 Math.pow 로 계산한다(양수 거듭제곱의 역수는
+       중간 값이 넘쳐 작은 결과가 0 이 되므로 쓰지 않음). */
+    static double pow(double x, double e)
+    {
+        if(e != (long) e || e < 0 || e >= 0x1p62)
+            return Math.pow(x, e);
+
+        long n = (long) e;
+        double r = 1.0;
+        double b = x;
+        while(n != 0) {
+            if((n & 1) != 0) r *= b;
+            b *= b;
+            n >>>= 1;
+        }
+        return r;
+    }
+
+    // 나누는 수 검사(0이면 오류, 아니면 그대로 반환)
+    static double checkDivisor(double d) throws ParserException
+    {
+        if(d == 0.0)
+            Parser.handleErr(Parser.DIVBYZERO);
+        return d;
+    }
+
+    // 단항 -
+    static Value neg(Value result) throws ParserException
+    {
+        if(!result.isNumber())
+            Parser.handleErr(Parser.OPERATOR);
+        return Value.number(-result.num());    //음수 처리
+    }
+}
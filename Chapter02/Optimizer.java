@@ -0,0 +1,222 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+   컴파일된 수식 트리의 상수 접기와 대수적 단순화.
+     - 피연산자가 모두 상수인 연산은 미리 계산한다(문자열 연결, 반복,
+       기본 함수 호출 포함).
+       계산 중 오류가 나는 연산(0으로 나누기 등)은 접지 않고 남겨 두어
+       실행할 때 원래와 같은 오류가 나도록 한다.
+     - 계산된 숫자임이 확실한 x 에 대해 x*1, 1*x, x/1, x-0, x^1, -(-x) 를
+       x 로 바꾼다.
+       변수는 문자열일 수도 있으므로(X+0 은 연결) 숫자로 보지 않는다.
+       x+0 은 x 가 -0.0 일 때 결과가 0.0 이 되므로 바꾸지 않는다.
+   바꾼 내용은 report() 로 확인할 수 있다.
+*/
+final class Optimizer {
+    // 이보다 긴 문자열 결과는 미리 만들지 않음(트리에 큰 상수를 담지 않도록)
+    private static final int MAX_FOLDED_STRING = 1024;
+
+    private final List<String> report = new ArrayList<>();
+
+    Node optimize(Node n) {
+        switch(n.kind) {
+            case Node.ASSIGN: {
+                Node expr = optimize(n.left);
+                return expr == n.left ? n : Node.assign(n.slot, n.name, expr);
+            }
+            case Node.NEG:
+                return optimizeNeg(n, optimize(n.left));
+            case Node.CALL:
+                return optimizeCall(n);
+            case Node.BINARY:
+                if(n.op == '^')
+                    return optimizePowChain(n);
+                if(isChain(n.left))
+                    return optimizeChain(n);
+                return optimizeBinary(n, optimize(n.left), optimize(n.right));
+            default:
+                return n;
+        }
+    }
+
+    // 오른쪽으로 길게 이어지는 a^b^c... 체인은 재귀하지 않고 처리
+    private Node optimizePowChain(Node n) {
+        ArrayList<Node> chain = new ArrayList<>();
+        Node t = n;
+        for(; t.kind == Node.BINARY && t.op == '^'; t = t.right)
+            chain.add(t);
+
+        Node[] bases = new Node[chain.size()];
+        for(int i = 0; i < bases.length; i++)
+            bases[i] = optimize(chain.get(i).left);
+
+        Node result = optimize(t);
+        for(int i = bases.length - 1; i >= 0; i--)
+            result = optimizeBinary(chain.get(i), bases[i], result);
+        return result;
+    }
+
+    // 왼쪽 자식으로 이어지는 이항 연산(^ 제외)인지
+    private static boolean isChain(Node n) {
+        return n.kind == Node.BINARY && n.op != '^';
+    }
+
+    // 왼쪽으로 길게 이어지는 a+b+c... 체인도 재귀하지 않고 맨 아래부터 접는다
+    private Node optimizeChain(Node n) {
+        ArrayList<Node> chain = new ArrayList<>();
+        Node t = n;
+        for(; isChain(t); t = t.left)
+            chain.add(t);
+
+        Node result = optimize(t);
+        for(int i = chain.size() - 1; i >= 0; i--)
+            result = optimizeBinary(chain.get(i), result, optimize(chain.get(i).right));
+        return result;
+    }
+
+    // 적용한 최적화 목록
+    List<String> report() {
+        return Collections.unmodifiableList(report);
+    }
+
+    private Node optimizeNeg(Node n, Node operand) {
+        if(operand.kind == Node.CONST && operand.value.isNumber()) {
+            Node folded = Node.constant(Value.number(-operand.value.num()));
+            report.add("folded " + n + " -> " + folded);
+            return folded;
+        }
+        if(operand.kind == Node.NEG && isNumeric(operand.left)) {
+            report.add("removed double negation in " + n);
+            return operand.left;
+        }
+        return operand == n.left ? n : Node.neg(operand);
+    }
+
+    // 인자를 최적화하고, 기본 함수에 상수 인자이면 미리 호출
+    private Node optimizeCall(Node n) {
+        Node[] args = new Node[n.args.length];
+        boolean changed = false, constant = true;
+        for(int i = 0; i < args.length; i++) {
+            args[i] = optimize(n.args[i]);
+            changed |= args[i] != n.args[i];
+            constant &= args[i].kind == Node.CONST;
+        }
+
+        if(constant && n.fn.pure) {
+            Value[] values = new Value[args.length];
+            for(int i = 0; i < args.length; i++) values[i] = args[i].value;
+            try {
+                Node folded = Node.constant(n.fn.apply(values));
+                report.add("folded " + n + " -> " + folded);
+                return folded;
+            } catch(ParserException exc) {
+                // 실행 시에 같은 오류가 나도록 그대로 둠
+            }
+        }
+        return changed ? Node.call(n.fn, args) : n;
+    }
+
+    private Node optimizeBinary(Node n, Node l, Node r) {
+        if(l.kind == Node.CONST && r.kind == Node.CONST && fitsFolded(n.op, l.value, r.value)
+                && (n.op != '^' || isExactPower(l.value, r.value))) {
+            try {
+                Node folded = Node.constant(Operators.apply(n.op, l.value, r.value));
+                report.add("folded " + n + " -> " + folded);
+                return folded;
+            } catch(ParserException exc) {
+                // 실행 시에 같은 오류가 나도록 그대로 둠
+            }
+        }
+
+        Node kept = null;
+        switch(n.op) {
+            case '*':
+                if(isOne(r) && isNumeric(l)) kept = l;
+                else if(isOne(l) && isNumeric(r)) kept = r;
+                break;
+            case '/':
+            case '^':
+                if(isOne(r) && isNumeric(l)) kept = l;
+                break;
+            case '-':
+                if(isZero(r) && isNumeric(l)) kept = l;
+                break;
+        }
+        if(kept != null) {
+            report.add("simplified " + n + " -> " + kept);
+            return kept;
+        }
+
+        if(l == n.left && r == n.right) return n;
+        return Node.binary(n.op, l, r);
+    }
+
+    // 접은 결과가 너무 큰 문자열이 되지 않는지 확인
+    private static boolean fitsFolded(char op, Value l, Value r) {
+        if(l.isNumber() && r.isNumber()) return true;
+        long len;
+        if(op == '+') len = (long) l.length() + r.length();
+        else if(op == '*') {
+            Value s = l.isNumber() ? r : l, count = l.isNumber() ? l : r;
+            len = count.isNumber() ? (long) s.length() * Math.max(0, (int) count.num()) : 0;
+        }
+        else len = l.length();
+        return len <= MAX_FOLDED_STRING;
+    }
+
+    /* exact 모드에서 결과가 달라지지 않는 거듭제곱인지 확인.
+       큰 정수 거듭제곱은 실행 시의 모드에 따라 표기가 달라지므로 접지 않는다. */
+    private static boolean isExactPower(Value l, Value r) {
+        if(!l.isNumber() || !r.isNumber()) return true;    // 오류는 그대로 둠
+        double e = r.num();
+        if(e < 0 || e != (int) e) return true;
+        if(e > 64) return false;
+        try {
+            return Operators.pow(l, r, true).toString().equals(Operators.pow(l, r, false).toString());
+        } catch(ParserException exc) {
+            return true;
+        }
+    }
+
+    /* 결과가 항상 계산된 숫자인(또는 오류인) 노드인지 검사.
+       변수와 문자열이 섞일 수 있는 +, -, * 는 양쪽이 모두 숫자일 때만 숫자다.
+       상수와 변수는 원래 표기를 유지할 수 있으므로 x*1 을 x 로 바꾸면
+       출력이 달라진다.
+       왼쪽으로 이어지는 +, -, * 체인은 재귀하지 않고 따라간다. */
+    static boolean isNumeric(Node n) {
+        for(;;) {
+            switch(n.kind) {
+                case Node.NEG:
+                    return true;
+                case Node.BINARY:
+                    if(n.op == '/' || n.op == '%' || n.op == '^') return true;
+                    if(!isNumber(n.right)) return false;
+                    n = n.left;
+                    if(n.kind == Node.CONST) return n.value.isNumber();
+                    break;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    // 값이 숫자인지(표기 유지 여부는 상관없음)
+    private static boolean isNumber(Node n) {
+        if(n.kind == Node.CONST) return n.value.isNumber();
+        return isNumeric(n);
+    }
+
+    private static boolean isOne(Node n) {
+        return n.kind == Node.CONST && n.value.isNumber() && n.value.num() == 1.0;
+    }
+
+    // +0.0 만 해당(x - (-0.0) 은 x + 0.0 이므로 항등식이 아님)
+    private static boolean isZero(Node n) {
+        return n.kind == Node.CONST && n.value.isNumber() &&
+                Double.doubleToRawLongBits(n.value.num()) == 0L;
+    }
+}
@@ -1,405 +1,500 @@
 package com.company;
+
+import java.util.ArrayList;
+
 /*
    This module contains the recursive descent
    parser that uses variables.
 */
 
-// Exception class for parser errors.
-class ParserException extends Exception {
-    String errStr; // describes the error
+class Parser {
+    // These are the types of syntax errors.
+    static final int SYNTAX = 0;
+    static final int UNBALPARENS = 1;  //괄호 오류
+    static final int NOEXP = 2;        //표현이 없음
+    static final int DIVBYZERO = 3;    //0으로 나눔
+    static final int OPERATOR = 4;
+    static final int TOOLONG = 5;      //문자열 결과가 너무 김
+    static final int UNKNOWNFUNC = 6;  //등록되지 않은 함수
+    static final int ARGCOUNT = 7;     //함수 인자 수가 맞지 않음
+    static final int CYCLE = 8;        //셀 사이의 순환 참조(RecalcGraph)
+    static final int BUDGET = 9;       //자원 제한 초과(Budget)
+    static final int TOOMANYVARS = 10; //변수 수 제한 초과(SymbolTable.setLimit)
+
+    // 오류 코드별 메시지
+    private static final String[] ERRORS = {
+            "Syntax Error",
+            "Unbalanced Parentheses",
+            "No Expression Present",
+            "Division by Zero",
+            "This operator cannot be applied",
+            "String result too long",
+            "Unknown function",
+            "Wrong number of arguments",
+            "Circular reference",
+            "Evaluation budget exceeded",
+            "Too many variables"
+    };
+
+    /* Parser 는 상태를 갖지 않는다. 토큰 위치는 compile() 마다 새로 만드는
+       Lexer 에, 변수 값은 EvaluationContext 에 있으므로 한 인스턴스를
+       여러 스레드가 동시에 사용할 수 있다. */
+
+    // 변수 이름과 슬롯 대응표(이 Parser 가 만든 모든 수식이 공유)
+    private final SymbolTable symbols = new SymbolTable();
+
+    // evaluate(String) 용 스레드별 기본 변수 바인딩
+    private final ThreadLocal<EvaluationContext> localContext =
+            ThreadLocal.withInitial(this::newContext);
+
+    // 컴파일된 수식 캐시(없으면 null)
+    private final ExpressionCache cache;
+
+    // 컴파일 시 상수 접기와 단순화를 할지 여부
+    private final boolean optimize;
+
+    // 수식에서 호출할 수 있는 함수
+    private final FunctionRegistry functions;
+
+    // 계산 통계(기록하지 않으면 null)
+    private volatile ParserMetrics metrics;
+
+    public Parser() {
+        this(null);
+    }
 
-    public ParserException(String str) {
-        errStr = str;
+    public Parser(ExpressionCache cache) {
+        this(cache, true);
     }
 
-    public String toString() {
-        return errStr;
+    public Parser(ExpressionCache cache, boolean optimize) {
+        this(cache, optimize, new FunctionRegistry());
     }
-}
 
-class Parser {
-    // These are the token types.
-    final int NONE = 0;
-    final int DELIMITER = 1;    //문자
-    final int VARIABLE = 2;     //변수
-    final int NUMBER = 3;       //숫자
-    final int STRING=4;         //문자열
+    // cache 는 다른 Parser 와 함께 쓸 수 없다(ExpressionCache.bind)
+    public Parser(ExpressionCache cache, boolean optimize, FunctionRegistry functions) {
+        if(cache != null)
+            cache.bind(symbols);
+        this.cache = cache;
+        this.optimize = optimize;
+        this.functions = functions;
+    }
 
-    // These are the types of syntax errors.
-    final int SYNTAX = 0;
-    final int UNBALPARENS = 1;  //괄호 오류
-    final int NOEXP = 2;        //표현이 없음
-    final int DIVBYZERO = 3;    //0으로 나눔
-    final int OPERATOR = 4;
+    ExpressionCache getCache() {
+        return cache;
+    }
 
-    // This token indicates end-of-expression.
-    final String EOE = "\0";
+    // 사용자 함수는 여기에 등록(그 함수를 쓰는 수식을 컴파일하기 전에)
+    FunctionRegistry getFunctions() {
+        return functions;
+    }
 
-    private String exp;   // 표현을 담고있는 문자열(파싱 과정이 끝난 수식 표현)
-    private int expIdx;   // 표현의 현재 인덱스
-    private String token; // 현재 인덱싱 된 토큰
-    private int tokType;  // 현재 인덱싱 된 토큰의 타입
+    SymbolTable getSymbols() {
+        return symbols;
+    }
 
-    // 변수형을 위한 배열
-    private String vars[] = new String[26];
+    // 계산 통계 기록 시작(null 이면 중지)
+    void setMetrics(ParserMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    ParserMetrics getMetrics() {
+        return metrics;
+    }
+
+    // 이 Parser 의 수식을 계산할 변수 바인딩
+    EvaluationContext newContext() {
+        return new EvaluationContext(symbols);
+    }
+
+    EvaluationContext newContext(SharedVariables shared) {
+        return new EvaluationContext(symbols, shared);
+    }
 
     // 파서 진입 지점
     public String evaluate(String expstr) throws ParserException
     {
-        String result;
-        exp = expstr;
-        expIdx = 0;
+        return evaluate(expstr, localContext.get());
+    }
 
-        getToken();
-        if(token.equals(EOE))
-            handleErr(NOEXP); // 표현식이 없음
+    // 호출자가 넘긴 변수 바인딩으로 계산
+    public String evaluate(String expstr, EvaluationContext ctx) throws ParserException
+    {
+        ParserMetrics m = metrics;
+        if(m != null)
+            return evaluateMeasured(expstr, ctx, null, m);
+        return compile(expstr).evaluate(ctx);
+    }
 
-        // 재귀적 파싱, 계산 시작
-        result = evalExp1();
+    // budget 가 null 이면 보통 계산
+    private String evaluateMeasured(String expstr, EvaluationContext ctx, Budget budget, ParserMetrics m)
+            throws ParserException
+    {
+        long bytes = m.allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            String result = budget == null ? compile(expstr).evaluate(ctx)
+                    : evaluateUnmeasured(expstr, ctx, budget);
+            m.record(expstr, System.nanoTime() - start, m.allocatedBytes() - bytes, -1, false);
+            return result;
+        } catch(ParserException exc) {
+            m.record(expstr, System.nanoTime() - start, m.allocatedBytes() - bytes, exc.getCode(), true);
+            throw exc;
+        }
+    }
 
-        if(!token.equals(EOE)) // 문자열의 마지막 토큰은 EOE 여야 한다.
-            handleErr(SYNTAX);
+    /* 믿을 수 없는 입력을 자원 제한 안에서 계산.
+       캐시에 없는 수식은 트리를 만들기 전에, 트리 크기와 깊이는 계산 전에 검사한다. */
+    public String evaluate(String expstr, EvaluationContext ctx, Budget budget) throws ParserException
+    {
+        ParserMetrics m = metrics;
+        if(m != null)
+            return evaluateMeasured(expstr, ctx, budget, m);
+        return evaluateUnmeasured(expstr, ctx, budget);
+    }
 
-        if(!isDigitstr(result)){    //결과 값이 문자열이면 큰따옴표 삽입
-            result="\""+result+"\"";
+    private String evaluateUnmeasured(String expstr, EvaluationContext ctx, Budget budget) throws ParserException
+    {
+        Expression e = cache != null ? cache.get(expstr) : null;
+        if(e == null) {
+            budget.checkSource(expstr, this);
+            e = parse(expstr);
+            if(cache != null)
+                cache.put(expstr, e);
         }
-        return result;
+        if(e.isInvalid())
+            handleErr(e.getErrorCode(), e.getErrorPosition());
+        return e.evaluate(ctx, budget);
+    }
+
+    public EvalResult tryEvaluate(String expstr, EvaluationContext ctx, Budget budget)
+    {
+        try {
+            return EvalResult.ok(evaluate(expstr, ctx, budget));
+        } catch(ParserException exc) {
+            return EvalResult.error(exc.getCode(), exc.getPosition());
+        }
+    }
+
+    /* 예외를 던지지 않고 결과나 오류를 돌려줌.
+       파싱 오류는 예외 없이 처리되고, 계산 중 오류도 EvalResult 로 바꿔 준다. */
+    public EvalResult tryEvaluate(String expstr)
+    {
+        return tryEvaluate(expstr, localContext.get());
+    }
+
+    public EvalResult tryEvaluate(String expstr, EvaluationContext ctx)
+    {
+        ParserMetrics m = metrics;
+        if(m == null)
+            return tryEvaluateUnmeasured(expstr, ctx);
+
+        long bytes = m.allocatedBytes();
+        long start = System.nanoTime();
+        EvalResult r = tryEvaluateUnmeasured(expstr, ctx);
+        m.record(expstr, System.nanoTime() - start, m.allocatedBytes() - bytes, r.getErrorCode(), r.isError());
+        return r;
+    }
+
+    private EvalResult tryEvaluateUnmeasured(String expstr, EvaluationContext ctx)
+    {
+        Expression e = lookup(expstr);
+        if(e.isInvalid())
+            return EvalResult.error(e.getErrorCode(), e.getErrorPosition());
+        return e.tryEvaluate(ctx);
+    }
+
+    // 수식을 한 번만 파싱해 반복 계산할 수 있는 트리로 만든다
+    public Expression compile(String expstr) throws ParserException
+    {
+        Expression e = lookup(expstr);
+        if(e.isInvalid())
+            handleErr(e.getErrorCode(), e.getErrorPosition());
+        return e;
+    }
+
+    // 숫자 수식을 변수 var 로 미분한 수식
+    public Expression derivative(String expstr, String var) throws ParserException
+    {
+        return Differentiator.derivative(compile(expstr), var);
+    }
+
+    // 값과 vars 에 대한 편도함수를 한 번에 계산하는 함수
+    public Gradient gradient(String expstr, String... vars) throws ParserException
+    {
+        return new Gradient(compile(expstr), vars);
+    }
+
+    /* 재귀 없이 파싱하고 계산하는 엔진(RpnCompiler)으로 컴파일.
+       문법과 오류는 compile()과 같고, 아주 깊게 중첩되거나 매우 긴 수식도
+       스레드 스택을 넘치지 않는다. 최적화와 캐시는 사용하지 않는다. */
+    public RpnExpression compileIterative(String expstr) throws ParserException
+    {
+        RpnExpression e = RpnCompiler.compile(expstr, symbols, functions);
+        if(e.isInvalid())
+            handleErr(e.getErrorCode(), e.getErrorPosition());
+        return e;
+    }
+
+    public String evaluateIterative(String expstr, EvaluationContext ctx) throws ParserException
+    {
+        return compileIterative(expstr).evaluate(ctx);
+    }
+
+    /* 캐시를 거쳐 컴파일. 오류가 있는 수식도 오류 정보를 담은 Expression 으로
+       반환하고 캐시에 넣으므로 같은 잘못된 수식은 다시 파싱하지 않는다. */
+    private Expression lookup(String expstr)
+    {
+        if(cache == null)
+            return parse(expstr);
+
+        // 캐시에 있으면 토큰 분석과 파싱을 모두 건너뜀
+        Expression e = cache.get(expstr);
+        if(e == null) {
+            e = parse(expstr);
+            cache.put(expstr, e);
+        }
+        return e;
+    }
+
+    /* 재귀 파서나 Optimizer 가 스택을 넘칠 만큼 깊은 수식은 재귀 없는 파서
+       (RpnCompiler)의 결과로 트리를 만든다(최적화 없음). 이런 트리의 계산도
+       Expression 이 재귀 없이 처리하므로 어느 진입 지점에서도
+       StackOverflowError 가 밖으로 나가지 않는다. */
+    private Expression parse(String expstr)
+    {
+        try {
+            return parseRecursive(expstr);
+        } catch(StackOverflowError err) {
+            RpnExpression r = RpnCompiler.compile(expstr, symbols, functions);
+            if(r.isInvalid())
+                return Expression.invalid(expstr, r.getErrorCode(), r.getErrorPosition());
+            return new Expression(expstr, r.toTree(symbols), symbols);
+        }
+    }
+
+    /* 파싱 중 오류는 예외 대신 Lexer 에 기록한다. 오류가 나면 Lexer 는
+       수식 끝(NONE)으로 이동하므로 나머지 파싱 메소드는 곧바로 끝난다. */
+    private Expression parseRecursive(String expstr)
+    {
+        Node root;
+        Lexer lex = new Lexer(expstr);
+
+        if(lex.next() == Lexer.NONE && lex.error < 0)
+            lex.fail(NOEXP); // 표현식이 없음
+
+        // 재귀적 파싱 시작
+        root = evalExp1(lex);
+
+        if(lex.type != Lexer.NONE) // 문자열의 마지막 토큰은 EOE 여야 한다.
+            lex.fail(SYNTAX);
+
+        if(lex.error >= 0)
+            return Expression.invalid(expstr, lex.error, lex.errorPos);
+
+        if(!optimize)
+            return new Expression(expstr, root, symbols);
+
+        Optimizer opt = new Optimizer();
+        root = opt.optimize(root);
+        return new Expression(expstr, root, symbols, opt.report());
     }
 
     // 변수 값 할당 처리
-    private String evalExp1() throws ParserException
+    private Node evalExp1(Lexer lex)
     {
-        String result;
-        int varIdx;
-        int ttokType;
-        String temptoken;
-
-        if(tokType == VARIABLE) {
-            //토큰 임시 저장
-            temptoken = new String(token);
-            ttokType = tokType;
-
-            // 변수 인덱스 계산
-            varIdx = Character.toUpperCase(token.charAt(0)) - 'A';
-
-            getToken();
-            //새로 받아온 토큰이 =이 아니면 토큰을 다시 돌려보내야함(인덱스 값 조정)
-            if(!token.equals("=")) {
-                putBack();
-                // 임시 저장한 토큰 다시 되돌림
-                token = new String(temptoken);
-                tokType = ttokType;
-            }
-            else {
-                getToken(); // 변수에 할당할 토큰을 가져옴
-                result = evalExp2();
-                vars[varIdx] = result;
-                return result;
-            }
+        int slot;
+
+        //다음 토큰이 =이면 할당, 아니면 일반 수식
+        if(lex.type == Lexer.VARIABLE && lex.peek('=')) {
+            // 변수 슬롯 계산
+            slot = findVar(lex);
+            lex.next();
+            lex.next(); // 변수에 할당할 토큰을 가져옴
+            return Node.assign(slot, symbols.name(slot), evalExp2(lex));
         }
 
-        return evalExp2();
+        return evalExp2(lex);
     }
 
     // 덧셈, 뺄셈
-    private String evalExp2() throws ParserException
+    private Node evalExp2(Lexer lex)
     {
         char op;
-        String result;
-        String partialResult;
-
-        result = evalExp3();
-        while((op = token.charAt(0)) == '+' || op == '-') {
-            getToken();
-            partialResult = evalExp3();
-            switch(op) {
-                case '-':
-                    if(isDigitstr(result)&&isDigitstr(partialResult))
-                        result = Double.toString(Double.parseDouble(result) - Double.parseDouble(partialResult));
-                    else
-                        result=result.replace(partialResult,"");
-                    break;
-                case '+':
-                    if(isDigitstr(result)&&isDigitstr(partialResult))
-                        result = Double.toString(Double.parseDouble(result) + Double.parseDouble(partialResult));
-                    else
-                        result=result+partialResult;
-                    break;
-            }
+        Node result;
+        Node partialResult;
+
+        result = evalExp3(lex);
+        while((op = lex.op()) == '+' || op == '-') {
+            lex.next();
+            partialResult = evalExp3(lex);
+            result = Node.binary(op, result, partialResult);
         }
         return result;
     }
 
     // 곱셈, 나눗셈
-    private String evalExp3() throws ParserException
+    private Node evalExp3(Lexer lex)
     {
         char op;
-        String result;
-        String partialResult;
+        Node result;
+        Node partialResult;
 
-        result = evalExp4();
+        result = evalExp4(lex);
 
-        while((op = token.charAt(0)) == '*' ||
+        while((op = lex.op()) == '*' ||
                 op == '/' || op == '%') {
-            getToken();
-            partialResult = evalExp4();
-            switch(op) {
-                case '*':
-                    if(isDigitstr(result)&&isDigitstr(partialResult))
-                        result = Double.toString(Double.parseDouble(result) * Double.parseDouble(partialResult));
-                    else if(!isDigitstr(result)&&isDigitstr(partialResult)){    //문자열*숫자인 경우
-                        if(Double.parseDouble(partialResult)<0) handleErr(OPERATOR);
-                        else result=result.repeat(Integer.parseInt(partialResult));
-                    }
-                    else if(isDigitstr(result)&&!isDigitstr(partialResult)){    //숫자*문자열인 경우
-                        if(Double.parseDouble(result)<0) handleErr(OPERATOR);
-                        else result=partialResult.repeat(Integer.parseInt(result));
-                    }
-                    else{
-                        handleErr(OPERATOR);
-                    }
-                    break;
-                case '/':
-                    if(partialResult == "0.0")
-                        handleErr(DIVBYZERO);
-                    if(isDigitstr(result)&&isDigitstr(partialResult))
-                        result = Double.toString(Double.parseDouble(result) / Double.parseDouble(partialResult));
-                    else{
-                        handleErr(OPERATOR);
-                    }
-                    break;
-                case '%':
-                    if(partialResult == "0.0")
-                        handleErr(DIVBYZERO);
-                    if(isDigitstr(result)&&isDigitstr(partialResult))
-                        result = Double.toString(Double.parseDouble(result) % Double.parseDouble(partialResult));
-                    else{
-                        handleErr(OPERATOR);
-                    }
-                    break;
-            }
+            lex.next();
+            partialResult = evalExp4(lex);
+            result = Node.binary(op, result, partialResult);
         }
         return result;
     }
 
     // 지수
-    private String evalExp4() throws ParserException
+    private Node evalExp4(Lexer lex)
     {
-        String result;
-        String partialResult;
-        String ex;
-        int t;
-
-        result = evalExp5();
-
-        if(token.equals("^")) {
-            getToken();
-            partialResult = evalExp4();
-            ex = result;
-            if(partialResult == "0.0") {
-                result = "1.0";
-            }
-            else{
-                if(isDigitstr(result)&&isDigitstr(partialResult)){
-                    for(t=Integer.parseInt(partialResult)-1; t > 0; t--)
-                        result =  Double.toString(Double.parseDouble(result)* Double.parseDouble(ex));
-                }
-                else{
-                    handleErr(OPERATOR);
-                }
-            }
-
+        Node result;
+        ArrayList<Node> operands;
+
+        result = evalExp5(lex);
+        if(!lex.is('^'))
+            return result;
+
+        // a^b^c 는 오른쪽부터 묶이므로 피연산자를 모은 뒤 뒤에서부터 트리를 만든다
+        // (재귀하지 않으므로 긴 지수 체인에서도 스택이 깊어지지 않음)
+        operands = new ArrayList<>();
+        operands.add(result);
+        while(lex.is('^')) {
+            lex.next();
+            operands.add(evalExp5(lex));
         }
+        result = operands.get(operands.size() - 1);
+        for(int i = operands.size() - 2; i >= 0; i--)
+            result = Node.binary('^', operands.get(i), result);
         return result;
     }
 
     // 단항 +, -
-    private String evalExp5() throws ParserException
+    private Node evalExp5(Lexer lex)
     {
-        String result;
-        String  op;
+        Node result;
+        char op;
 
-        op = "";
         //단항 연산자이면 op에 저장 후 evalExp6으로, 아니면 evalExp6으로 바로 넘어감
-        if((tokType == DELIMITER) &&
-                token.equals("+") || token.equals("-")) {
-            op = token;
-            getToken();
-        }
-        result = evalExp6();
+        op = lex.op();
+        if(op == '+' || op == '-')
+            lex.next();
+        result = evalExp6(lex);
 
-        if(op.equals("-")) {
-            if (isDigitstr(result))
-                result = Double.toString(-Double.parseDouble(result));    //음수 처리
-            else handleErr(OPERATOR);
-        }
+        if(op == '-')
+            result = Node.neg(result);    //음수 처리
         return result;
     }
 
     // 괄호
-    private String evalExp6() throws ParserException
+    private Node evalExp6(Lexer lex)
     {
-        String result;
-
-        if(token.equals("(")) {
-            getToken();
-            result = evalExp2();
-            if(!token.equals(")"))
-                handleErr(UNBALPARENS);
-            getToken();
+        Node result;
+
+        if(lex.is('(')) {
+            lex.next();
+            result = evalExp2(lex);
+            if(!lex.is(')'))
+                lex.fail(UNBALPARENS);
+            lex.next();
         }
-        else result = atom();
+        else result = atom(lex);
 
         return result;
     }
 
-    //숫자 또는 변수 값 가져옴
-    private String atom() throws ParserException
+    //숫자, 문자열 상수 또는 변수 참조 노드 생성
+    private Node atom(Lexer lex)
     {
-        String result = "0.0";
-
-        switch(tokType) {
-            case NUMBER:
-                try {
-                    result = token;
-                } catch (NumberFormatException exc) {
-                    handleErr(SYNTAX);
-                }
-                getToken();
-                break;
-            case VARIABLE:
-                result =  findVar(token);
-                getToken();
+        Node result = null;
+
+        switch(lex.type) {
+            case Lexer.NUMBER:
+            case Lexer.STRING:
+                result = Node.constant(Value.of(lex.text()));    // 숫자인지 여기서 한 번만 판별
+                lex.next();
                 break;
-            case STRING:
-                result = token;
-                getToken();
+            case Lexer.VARIABLE: {
+                if(lex.peek('('))   // 이름 뒤에 ( 가 오면 함수 호출
+                    return call(lex);
+                int slot = findVar(lex);
+                result = Node.var(slot, symbols.name(slot));
+                lex.next();
                 break;
+            }
             default:
-                handleErr(SYNTAX);
+                lex.fail(SYNTAX);
+                result = Node.constant(Value.ZERO);    // 오류 뒤의 파싱을 끝내기 위한 자리
                 break;
         }
         return result;
     }
 
-    //변수의 값 반환(인덱스는 문자아스키코드-A)
-    private String findVar(String vname) throws ParserException
+    // 함수 호출: 이름(인자, ...). 함수는 여기서 한 번만 찾는다
+    private Node call(Lexer lex)
     {
-        if(!Character.isLetter(vname.charAt(0))){
-            handleErr(SYNTAX);
-            return "0.0";
+        int at = lex.start;
+        FunctionRegistry.Entry fn = functions.lookup(lex.text());
+        if(fn == null) {
+            lex.fail(UNKNOWNFUNC);
+            return Node.constant(Value.ZERO);
         }
-        return vars[Character.toUpperCase(vname.charAt(0))-'A'];
+
+        ArrayList<Node> args = new ArrayList<>();
+        lex.next();     // (
+        lex.next();
+        if(!lex.is(')')) {
+            args.add(evalExp2(lex));
+            while(lex.is(',')) {
+                lex.next();
+                args.add(evalExp2(lex));
+            }
+        }
+        if(!lex.is(')'))
+            lex.fail(UNBALPARENS);
+        lex.next();
+
+        if(args.size() != fn.arity)
+            lex.fail(ARGCOUNT, at);
+        return Node.call(fn, args.toArray(new Node[0]));
     }
 
-    // 입력 스트림의 값만큼 인덱스 값을 되돌린다
-    private void putBack()
+    //변수의 슬롯 반환(이름 전체로 구분, 처음 보는 이름이면 새 슬롯)
+    private int findVar(Lexer lex)
     {
-        if(token == EOE) return;
-        for(int i=0; i < token.length(); i++) expIdx--;
+        char c = lex.firstChar();
+        if(!Character.isLetter(c)){
+            lex.fail(SYNTAX);
+            return 0;
+        }
+        int slot = symbols.trySlot(lex.text());
+        if(slot < 0) {
+            lex.fail(TOOMANYVARS);
+            return 0;
+        }
+        return slot;
     }
 
     // 에러처리
-    private void handleErr(int error) throws ParserException
+    static void handleErr(int error) throws ParserException
     {
-        String[] err = {
-                "Syntax Error",
-                "Unbalanced Parentheses",
-                "No Expression Present",
-                "Division by Zero",
-                "This operator cannot be applied"
-        };
-
-        throw new ParserException(err[error]);
-    }
-
-    // 토큰값을 가져오는 메소드
-    private void getToken() throws ParserException {
-        tokType = NONE;
-        token = "";
-
-//        // 표현의 마지막이면 getToken() 종료
-//        if(expIdx == exp.length()) {
-//            token = EOE;
-//            return;
-//        }
-
-        // 공백이면 다음으로 넘어감
-        /*charAt() 메소드
-        * String 문자열에서 한 글자만 선택하여 char 타입으로 변환
-        * str.charAt(index)의 형태로 사용한다
-        */
-        while(expIdx < exp.length() &&
-                Character.isWhitespace(exp.charAt(expIdx))) ++expIdx;
-
-        // 표현의 마지막이면 getToken() 종료
-        if(expIdx == exp.length()) {
-            token = EOE;
-            return;
-        }
+        handleErr(error, -1);
+    }
 
-        if(isDelim(exp.charAt(expIdx))) { // 연산자형
-            token += exp.charAt(expIdx);
-            expIdx++;
-            tokType = DELIMITER;
-        }
-        else if(Character.isLetter(exp.charAt(expIdx))) { // 변수형
-            while(!isDelim(exp.charAt(expIdx))) {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if(expIdx >= exp.length()) break;
-            }
-            tokType = VARIABLE;
-        }
-        else if(Character.isDigit(exp.charAt(expIdx))) { // 숫자형
-            while(!isDelim(exp.charAt(expIdx))) {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if(expIdx >= exp.length()) break;
-            }
-            tokType = NUMBER;
-        }
-        else if(isQuotes(exp.charAt(expIdx))){  //문자열형
-            while(!isDelim(exp.charAt(expIdx))) {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if(expIdx >= exp.length()){
-                    if(!isQuotes(exp.charAt(expIdx-1))) // 문자열이 "로 안끝나면 오류
-                        handleErr(SYNTAX);
-                    break;
-                }
-            }
-            token=token.replace("\"","");   //큰 따옴표 제거
-            tokType = STRING;
-        }
-        else { // 정의되지 않은 형(표현식 종료)
-            token = EOE;
-            return;
-        }
+    // position 은 오류가 난 수식 내 위치(모르면 -1)
+    static void handleErr(int error, int position) throws ParserException
+    {
+        throw new ParserException(ERRORS[error], error, position);
     }
 
-    // 연산자형 검사 메소드
-    private boolean isDelim(char c)
+    static String errorMessage(int error)
     {
-        if((" +-/*%^=()".indexOf(c) != -1))
-            return true;
-        return false;
-    }
-    //큰따옴표 검사 메소드
-    private boolean isQuotes(char c){
-        if(c=='\"') return true;
-        return false;
-    }
-
-    //숫자 문자열인지 검사하는 메소드
-    //숫자 문자열이 아니면 Double 형변환시 오류 발생하는 것을 이용
-    private boolean isDigitstr(String str){
-        try{
-            Double.parseDouble(str);
-        }catch (NumberFormatException exc){
-            return false;
-        }
-        return true;
+        return ERRORS[error];
     }
 }
-
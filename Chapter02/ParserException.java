@@ -0,0 +1,34 @@
+package com.company;
+
+// Exception class for parser errors.
+// 스택 추적을 기록하지 않으므로 만들고 던지는 비용이 작다.
+class ParserException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    String errStr; // describes the error
+    final int code;      // 오류 코드(Parser.SYNTAX 등, 없으면 -1)
+    final int position;  // 오류가 난 수식 내 위치(계산 중 오류이면 -1)
+
+    public ParserException(String str) {
+        this(str, -1, -1);
+    }
+
+    ParserException(String str, int code, int position) {
+        super(str, null, false, false);
+        errStr = str;
+        this.code = code;
+        this.position = position;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    public String toString() {
+        return errStr;
+    }
+}
@@ -0,0 +1,300 @@
+package com.company;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+   Parser.evaluate(), tryEvaluate()의 계산 횟수, 시간, 할당량, 오류를 기록한다.
+   Parser.setMetrics()로 붙였을 때만 기록하고, 붙이지 않으면 Parser 는
+   필드 하나가 null 인지만 확인하므로 비용이 거의 없다.
+
+     - 시간 분포는 HDR 히스토그램처럼 2의 거듭제곱 구간을 다시 SUB 개로
+       나눈 버킷에 세므로 상대 오차가 1/SUB 이하이다.
+     - 할당량은 스레드별 할당 바이트(com.sun.management.ThreadMXBean)의
+       차이로 추정한다. 지원하지 않는 JVM 이면 -1.
+     - 수식별 통계는 MAX_EXPRESSIONS 개까지 따로 세고 나머지는 "(other)"에 모은다.
+       MAX_KEY 자보다 긴 수식은 앞부분과 해시만 키로 저장한다.
+   snapshot()으로 현재 값을 복사하거나 register()로 JMX 에 등록해 본다.
+*/
+final class ParserMetrics implements ParserMetricsMXBean {
+    static final int MAX_EXPRESSIONS = 1000;
+    static final int MAX_KEY = 120;     // 수식별 통계 키의 최대 길이(앞부분)
+    private static final String OTHER = "(other)";
+
+    // 오류 코드별 이름(Parser 의 오류 코드 순서). 코드가 없는 예외는 마지막
+    private static final String[] ERROR_NAMES = {
+            "SYNTAX", "UNBALPARENS", "NOEXP", "DIVBYZERO", "OPERATOR",
+            "TOOLONG", "UNKNOWNFUNC", "ARGCOUNT", "CYCLE", "BUDGET",
+            "TOOMANYVARS", "OTHER"
+    };
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOC =
+            THREADS instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+            ? (com.sun.management.ThreadMXBean) THREADS : null;
+
+    private final Histogram latency = new Histogram();
+    private final LongAdder allocated = new LongAdder();
+    private final AtomicLongArray errors = new AtomicLongArray(ERROR_NAMES.length);
+    private final ConcurrentHashMap<String, Stats> expressions = new ConcurrentHashMap<>();
+
+    // 현재 스레드가 지금까지 할당한 바이트(지원하지 않으면 0)
+    long allocatedBytes() {
+        return ALLOC != null ? ALLOC.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /* 계산 한 번을 기록. code 는 오류 코드(성공이면 -1, 코드 없는 예외는 OTHER)
+       Parser 가 계산 전후의 System.nanoTime()과 allocatedBytes()를 넘긴다. */
+    void record(String source, long nanos, long bytes, int code, boolean failed) {
+        latency.record(nanos);
+        allocated.add(bytes);
+        if(failed)
+            errors.incrementAndGet(code >= 0 && code < ERROR_NAMES.length - 1 ? code : ERROR_NAMES.length - 1);
+
+        String key = key(source);
+        Stats s = expressions.get(key);
+        if(s == null) {
+            if(expressions.size() >= MAX_EXPRESSIONS) key = OTHER;
+            s = expressions.computeIfAbsent(key, k -> new Stats());
+        }
+        s.count.increment();
+        s.nanos.add(nanos);
+        s.max.accumulate(nanos);
+        if(failed) s.errors.increment();
+    }
+
+    // 통계 키. 긴 수식은 "앞부분...#해시" 로 줄여 맵이 긴 문자열을 붙잡지 않게 한다
+    private static String key(String source) {
+        if(source.length() <= MAX_KEY) return source;
+        return source.substring(0, MAX_KEY) + "...#" + Integer.toHexString(source.hashCode());
+    }
+
+    // 수식 하나의 통계
+    private static final class Stats {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        final LongAdder errors = new LongAdder();
+    }
+
+    /* 계산 시간 히스토그램. 값 v 가 [2^e, 2^(e+1)) 에 있으면
+       그 구간을 SUB 개로 나눈 버킷 중 하나에 센다. SUB 보다 작은 값은 그대로. */
+    static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = SUB + (63 - SUB_BITS) * SUB;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long v) {
+            if(v < 0) v = 0;
+            counts.incrementAndGet(index(v));
+            total.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        static int index(long v) {
+            if(v < SUB) return (int) v;
+            int e = 63 - Long.numberOfLeadingZeros(v);
+            return SUB + (e - SUB_BITS) * SUB + (int) (v >>> (e - SUB_BITS)) - SUB;
+        }
+
+        // 버킷에 드는 가장 큰 값
+        static long upper(int i) {
+            if(i < SUB) return i;
+            int e = (i - SUB) / SUB + SUB_BITS;
+            long lo = (long) (SUB + (i - SUB) % SUB) << (e - SUB_BITS);
+            return lo + (1L << (e - SUB_BITS)) - 1;
+        }
+
+        long count() {
+            return total.sum();
+        }
+
+        double mean() {
+            long n = total.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        // 백분위 값(버킷의 상한, 최댓값을 넘지 않음)
+        long percentile(double p) {
+            long n = total.sum();
+            if(n == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+            long seen = 0;
+            for(int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if(seen >= rank) return Math.min(upper(i), max.get());
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for(int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+            total.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    // 기록한 값의 복사본
+    static final class Snapshot {
+        final long evaluations;
+        final long errors;
+        final Map<String, Long> errorCounts;
+        final double meanNanos;
+        final long p50Nanos, p90Nanos, p99Nanos, p999Nanos, maxNanos;
+        final long allocatedBytes;
+        final List<ExpressionStats> expressions;   // 총 시간이 긴 순서
+
+        private Snapshot(ParserMetrics m) {
+            Histogram h = m.latency;
+            evaluations = h.count();
+            meanNanos = h.mean();
+            p50Nanos = h.percentile(50);
+            p90Nanos = h.percentile(90);
+            p99Nanos = h.percentile(99);
+            p999Nanos = h.percentile(99.9);
+            maxNanos = h.max();
+            allocatedBytes = ALLOC != null ? m.allocated.sum() : -1;
+
+            errorCounts = m.getErrorCounts();
+            long e = 0;
+            for(long c : errorCounts.values()) e += c;
+            errors = e;
+
+            List<ExpressionStats> list = new ArrayList<>();
+            m.expressions.forEach((src, s) -> list.add(new ExpressionStats(src, s)));
+            list.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+            expressions = Collections.unmodifiableList(list);
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("evaluations %d, errors %d%n", evaluations, errors));
+            sb.append(String.format("latency ns: mean %.0f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+                    meanNanos, p50Nanos, p90Nanos, p99Nanos, p999Nanos, maxNanos));
+            if(allocatedBytes >= 0)
+                sb.append(String.format("allocated %d bytes (%.0f per evaluation)%n", allocatedBytes,
+                        evaluations == 0 ? 0.0 : (double) allocatedBytes / evaluations));
+            errorCounts.forEach((k, v) -> {
+                if(v > 0) sb.append(String.format("  %-12s %d%n", k, v));
+            });
+            for(int i = 0; i < Math.min(10, expressions.size()); i++)
+                sb.append("  ").append(expressions.get(i)).append(System.lineSeparator());
+            return sb.toString();
+        }
+    }
+
+    // 수식 하나의 통계 복사본
+    static final class ExpressionStats {
+        final String source;
+        final long count;
+        final long totalNanos;
+        final long maxNanos;
+        final long errors;
+
+        private ExpressionStats(String source, Stats s) {
+            this.source = source;
+            this.count = s.count.sum();
+            this.totalNanos = s.nanos.sum();
+            this.maxNanos = s.max.get();
+            this.errors = s.errors.sum();
+        }
+
+        public String toString() {
+            return String.format("%s: %d calls, mean %d ns, max %d ns, %d errors",
+                    source, count, count == 0 ? 0 : totalNanos / count, maxNanos, errors);
+        }
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    // 플랫폼 MBeanServer 에 com.company:type=ParserMetrics,name=<name> 으로 등록
+    ObjectName register(String name) throws JMException {
+        ObjectName on = new ObjectName("com.company:type=ParserMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, on);
+        return on;
+    }
+
+    // --- ParserMetricsMXBean ---
+
+    public long getEvaluations() {
+        return latency.count();
+    }
+
+    public long getErrors() {
+        long e = 0;
+        for(int i = 0; i < ERROR_NAMES.length; i++) e += errors.get(i);
+        return e;
+    }
+
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for(int i = 0; i < ERROR_NAMES.length; i++)
+            counts.put(ERROR_NAMES[i], errors.get(i));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    public double getMeanNanos() {
+        return latency.mean();
+    }
+
+    public long getP50Nanos() {
+        return latency.percentile(50);
+    }
+
+    public long getP99Nanos() {
+        return latency.percentile(99);
+    }
+
+    public long getP999Nanos() {
+        return latency.percentile(99.9);
+    }
+
+    public long getMaxNanos() {
+        return latency.max();
+    }
+
+    public long getAllocatedBytes() {
+        return ALLOC != null ? allocated.sum() : -1;
+    }
+
+    public String[] getSlowestExpressions() {
+        List<ExpressionStats> list = snapshot().expressions;
+        String[] out = new String[Math.min(20, list.size())];
+        for(int i = 0; i < out.length; i++) out[i] = list.get(i).toString();
+        return out;
+    }
+
+    public void reset() {
+        latency.reset();
+        allocated.reset();
+        for(int i = 0; i < ERROR_NAMES.length; i++) errors.set(i, 0);
+        expressions.clear();
+    }
+}
@@ -0,0 +1,34 @@
+package com.company;
+
+import java.util.Map;
+
+/*
+   JMX 로 보이는 ParserMetrics 의 값(jconsole 등에서 확인).
+   시간은 나노초, 할당량은 바이트.
+*/
+public interface ParserMetricsMXBean {
+    long getEvaluations();
+
+    long getErrors();
+
+    // 오류 종류(SYNTAX, DIVBYZERO 등)별 횟수
+    Map<String, Long> getErrorCounts();
+
+    double getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    long getMaxNanos();
+
+    // 계산 중 할당한 바이트 추정치(JVM 이 지원하지 않으면 -1)
+    long getAllocatedBytes();
+
+    // 총 계산 시간이 긴 수식(수식, 횟수, 평균 시간)
+    String[] getSlowestExpressions();
+
+    void reset();
+}
@@ -0,0 +1,267 @@
+package com.company;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+   스프레드시트처럼 수식(셀) 사이의 의존 관계를 기록해 두고
+   바뀐 입력 변수에 영향을 받는 셀만 다시 계산한다.
+     - 셀은 "A = B * 2" 같은 할당 수식이거나 할당 없는 수식이다.
+       할당 셀은 A 를 읽는 셀들의 선행 셀이 된다.
+     - set()으로 입력을 바꾸고 recalculate()를 부르면 바뀐 변수에서
+       닿을 수 있는 셀만 위상 순서로 계산한다. 선행 셀이 모두 끝난 셀은
+       바로 작업으로 넘기므로 서로 의존하지 않는 가지는 병렬로 계산된다.
+     - 순환 참조는 셀을 추가할 때 검사해 "Circular reference" 오류를 낸다.
+     - 계산 중 오류가 난 셀의 후속 셀은 계산하지 않고 같은 오류를 기록한다.
+   변수 값은 SharedVariables 에 있으므로 작업 스레드마다 자신의
+   EvaluationContext 로 같은 변수를 읽고 쓴다.
+   셀 추가, set(), recalculate()는 한 스레드에서 차례로 불러야 한다.
+*/
+final class RecalcGraph {
+    // 다시 계산할 셀이 이보다 적으면 작업을 나누지 않고 호출한 스레드에서 계산
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private final Parser parser;
+    private final ForkJoinPool pool;
+    private final SharedVariables vars = new SharedVariables();
+
+    private final List<Cell> cells = new ArrayList<>();
+    private final ArrayList<List<Cell>> readers = new ArrayList<>();  // 슬롯별 그 변수를 읽는 셀
+    private final ArrayList<Cell> writers = new ArrayList<>();        // 슬롯별 그 변수에 할당하는 셀
+
+    private final BitSet dirtyVars = new BitSet();      // 값이 바뀐 입력 변수
+    private final List<Cell> dirtyCells = new ArrayList<>();  // 새로 추가된 셀
+    private int epoch;                                  // recalculate() 호출 번호
+
+    RecalcGraph(Parser parser) {
+        this(parser, ForkJoinPool.commonPool());
+    }
+
+    RecalcGraph(Parser parser, ForkJoinPool pool) {
+        this.parser = parser;
+        this.pool = pool;
+    }
+
+    // 하나의 수식과 마지막 계산 결과
+    static final class Cell {
+        final Expression expr;
+        final int target;       // 할당하는 변수 슬롯(할당이 없으면 -1)
+        final int[] reads;      // 읽는 변수 슬롯(중복 없음)
+
+        // 한 작업 스레드가 쓰고 후속 셀을 계산하는 다른 스레드가 읽으므로 volatile
+        private volatile String value;             // 마지막 결과
+        private volatile ParserException error;    // 마지막 오류(없으면 null)
+
+        // recalculate() 중에만 쓰는 상태
+        private int epoch;                         // 이번 계산 대상이면 RecalcGraph.epoch 와 같음
+        private final AtomicInteger pending = new AtomicInteger();  // 남은 선행 셀 수
+        private volatile ParserException failedBy; // 선행 셀의 오류
+
+        private Cell(Expression expr, int target, int[] reads) {
+            this.expr = expr;
+            this.target = target;
+            this.reads = reads;
+        }
+
+        String value() {
+            return value;
+        }
+
+        ParserException error() {
+            return error;
+        }
+
+        public String toString() {
+            return expr.getSource();
+        }
+    }
+
+    // 셀 추가. 다음 recalculate()에서 계산된다.
+    Cell add(String expstr) throws ParserException {
+        Expression e = parser.compile(expstr);
+        Node root = e.getRoot();
+        int target = root.kind == Node.ASSIGN ? root.slot : -1;
+
+        BitSet read = new BitSet();
+        collectReads(root, read);
+        int[] reads = read.stream().toArray();
+
+        if(target >= 0) {
+            if(target < writers.size() && writers.get(target) != null)
+                throw new IllegalArgumentException("variable " + root.name + " is already assigned by "
+                        + writers.get(target));
+            if(read.get(target) || reaches(target, read))
+                Parser.handleErr(Parser.CYCLE);
+        }
+
+        Cell c = new Cell(e, target, reads);
+        cells.add(c);
+        for(int slot : reads) readersOf(slot).add(c);
+        if(target >= 0) {
+            while(writers.size() <= target) writers.add(null);
+            writers.set(target, c);
+        }
+        dirtyCells.add(c);
+        return c;
+    }
+
+    // 수식이 읽는 변수 슬롯(재귀하지 않음)
+    private static void collectReads(Node root, BitSet read) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while(!stack.isEmpty()) {
+            Node n = stack.pop();
+            if(n.kind == Node.VAR) read.set(n.slot);
+            if(n.left != null) stack.push(n.left);
+            if(n.right != null) stack.push(n.right);
+            if(n.args != null)
+                for(Node a : n.args) stack.push(a);
+        }
+    }
+
+    // from 변수가 바뀌면 targets 중 하나가 다시 계산되는지(새 셀이 순환을 만드는지)
+    private boolean reaches(int from, BitSet targets) {
+        BitSet seen = new BitSet();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(from);
+        while(!stack.isEmpty()) {
+            int slot = stack.pop();
+            if(slot >= readers.size()) continue;
+            for(Cell c : readers.get(slot)) {
+                if(c.target < 0 || seen.get(c.target)) continue;
+                if(targets.get(c.target)) return true;
+                seen.set(c.target);
+                stack.push(c.target);
+            }
+        }
+        return false;
+    }
+
+    private List<Cell> readersOf(int slot) {
+        while(readers.size() <= slot) readers.add(new ArrayList<>());
+        return readers.get(slot);
+    }
+
+    // 입력 변수 값 변경
+    void set(String name, double value) {
+        set(parser.getSymbols().slot(name), Value.number(value));
+    }
+
+    void set(String name, String value) {
+        set(parser.getSymbols().slot(name), Value.of(value));
+    }
+
+    private void set(int slot, Value v) {
+        vars.set(slot, v);
+        dirtyVars.set(slot);
+    }
+
+    // 변수 값(할당되지 않았으면 0)
+    Value get(String name) {
+        int slot = parser.getSymbols().find(name);
+        Value v = slot >= 0 ? vars.get(slot) : null;
+        return v != null ? v : Value.ZERO;
+    }
+
+    List<Cell> cells() {
+        return cells;
+    }
+
+    // 바뀐 입력과 새 셀에 영향을 받는 셀을 다시 계산하고 계산한 셀 수를 반환
+    int recalculate() throws InterruptedException {
+        int run = ++epoch;
+
+        // 영향받는 셀 모으기
+        List<Cell> affected = new ArrayList<>();
+        ArrayDeque<Cell> work = new ArrayDeque<>(dirtyCells);
+        for(int slot = dirtyVars.nextSetBit(0); slot >= 0; slot = dirtyVars.nextSetBit(slot + 1))
+            if(slot < readers.size()) work.addAll(readers.get(slot));
+        dirtyVars.clear();
+        dirtyCells.clear();
+
+        while(!work.isEmpty()) {
+            Cell c = work.pop();
+            if(c.epoch == run) continue;
+            c.epoch = run;
+            affected.add(c);
+            if(c.target >= 0 && c.target < readers.size())
+                work.addAll(readers.get(c.target));
+        }
+
+        // 이번에 함께 계산되는 선행 셀 수
+        List<Cell> ready = new ArrayList<>();
+        for(Cell c : affected) {
+            int n = 0;
+            for(int slot : c.reads) {
+                Cell w = slot < writers.size() ? writers.get(slot) : null;
+                if(w != null && w.epoch == run) n++;
+            }
+            c.pending.set(n);
+            c.failedBy = null;
+            if(n == 0) ready.add(c);
+        }
+
+        if(affected.size() < PARALLEL_THRESHOLD) {
+            // 위상 순서로 차례로 계산
+            ArrayDeque<Cell> queue = new ArrayDeque<>(ready);
+            while(!queue.isEmpty()) {
+                Cell c = queue.poll();
+                evaluate(c);
+                for(Cell d : dependents(c, run))
+                    if(d.pending.decrementAndGet() == 0) queue.add(d);
+            }
+        }
+        else {
+            CountDownLatch done = new CountDownLatch(affected.size());
+            for(Cell c : ready) pool.execute(() -> run(c, run, done));
+            done.await();
+        }
+        return affected.size();
+    }
+
+    // 셀 하나를 계산하고 선행 셀이 모두 끝난 후속 셀을 작업으로 넘김
+    private void run(Cell c, int run, CountDownLatch done) {
+        try {
+            evaluate(c);
+            for(Cell d : dependents(c, run))
+                if(d.pending.decrementAndGet() == 0)
+                    pool.execute(() -> run(d, run, done));
+        } finally {
+            done.countDown();
+        }
+    }
+
+    // 이번 계산 대상인 후속 셀
+    private List<Cell> dependents(Cell c, int run) {
+        if(c.target < 0 || c.target >= readers.size()) return new ArrayList<>();
+        List<Cell> out = new ArrayList<>();
+        for(Cell d : readers.get(c.target)) {
+            if(d.epoch != run) continue;
+            out.add(d);
+            if(c.error != null) d.failedBy = c.error;  // 오류는 후속 셀로 전파
+        }
+        return out;
+    }
+
+    // 어떤 예외나 오류도 밖으로 내지 않는다(후속 셀이 스케줄되지 않아 recalculate()가 끝나지 않으므로)
+    private void evaluate(Cell c) {
+        if(c.failedBy != null) {
+            c.error = c.failedBy;
+            return;
+        }
+        try {
+            c.value = c.expr.evaluate(parser.newContext(vars));
+            c.error = null;
+        } catch(ParserException exc) {
+            c.error = exc;
+        } catch(Throwable exc) {
+            // 사용자 함수의 예외, StackOverflowError 등도 ParserException 처럼 후속 셀로 전파
+            c.error = new ParserException(exc.toString());
+        }
+    }
+}
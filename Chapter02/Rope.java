@@ -0,0 +1,190 @@
+package com.company;
+
+import java.util.ArrayDeque;
+
+/*
+   문자열 연산 결과를 바로 복사하지 않고 트리로 들고 있는 문자열(rope).
+   + 연결은 두 조각을 가리키는 노드, * 반복은 원본과 횟수만 가진 노드가
+   되므로 긴 연결 체인도 매번 전체를 복사하지 않는다.
+   실제 String 은 toString()을 처음 부를 때 한 번만 만든다.
+   모든 순회는 재귀 없이 반복문으로 처리한다.
+*/
+abstract class Rope implements CharSequence {
+    static final Rope EMPTY = new Leaf("");
+
+    // 이 길이 이하의 조각은 바로 합쳐 하나의 String 으로 만든다
+    private static final int SHORT = 64;
+
+    private String flat;  // 펼친 문자열(처음 요청할 때 생성)
+
+    /* 숫자 표기에 쓰일 수 있는 문자로만 이루어졌는지 여부.
+       false 이면 전체를 훑지 않고도 숫자가 아님을 알 수 있다. */
+    abstract boolean mayBeNumeric();
+
+    static Rope of(String s) {
+        return s.isEmpty() ? EMPTY : new Leaf(s);
+    }
+
+    // 두 문자열 연결(길이 검사는 호출자가 미리 함)
+    static Rope concat(Rope l, Rope r) {
+        if(l.length() == 0) return r;
+        if(r.length() == 0) return l;
+        if(l.length() + r.length() <= SHORT)
+            return new Leaf(l.toString() + r.toString());
+        // 한 글자씩 덧붙이는 체인은 짧은 끝 조각끼리 합쳐 노드 수를 줄임
+        if(l instanceof Concat && r.length() < SHORT) {
+            Concat c = (Concat) l;
+            if(c.right.length() + r.length() <= SHORT)
+                return new Concat(c.left, new Leaf(c.right.toString() + r.toString()));
+        }
+        return new Concat(l, r);
+    }
+
+    // 문자열 반복(길이 검사는 호출자가 미리 함)
+    static Rope repeat(Rope unit, int count) {
+        if(count == 0 || unit.length() == 0) return EMPTY;
+        if(count == 1) return unit;
+        if((long) unit.length() * count <= SHORT)
+            return new Leaf(unit.toString().repeat(count));
+        return new Repeat(unit, count);
+    }
+
+    public abstract int length();
+
+    public char charAt(int index) {
+        if(index < 0 || index >= length())
+            throw new StringIndexOutOfBoundsException(index);
+        Rope r = this;
+        for(;;) {
+            if(r.flat != null) return r.flat.charAt(index);
+            if(r instanceof Leaf) return ((Leaf) r).s.charAt(index);
+            if(r instanceof Concat) {
+                Concat c = (Concat) r;
+                if(index < c.left.length()) r = c.left;
+                else {
+                    index -= c.left.length();
+                    r = c.right;
+                }
+            }
+            else {
+                Repeat p = (Repeat) r;
+                index %= p.unit.length();
+                r = p.unit;
+            }
+        }
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    public String toString() {
+        String s = flat;
+        if(s == null)
+            flat = s = flatten();
+        return s;
+    }
+
+    // 트리 전체를 하나의 char 배열로 펼침
+    private String flatten() {
+        char[] buf = new char[length()];
+        ArrayDeque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[] { this, 0 });
+
+        while(!stack.isEmpty()) {
+            Object[] item = stack.pop();
+            Rope r = (Rope) item[0];
+            int off = (Integer) item[1];
+            if(r.flat != null || r instanceof Leaf) {
+                String s = r.flat != null ? r.flat : ((Leaf) r).s;
+                s.getChars(0, s.length(), buf, off);
+            }
+            else if(r instanceof Concat) {
+                Concat c = (Concat) r;
+                stack.push(new Object[] { c.right, off + c.left.length() });
+                stack.push(new Object[] { c.left, off });
+            }
+            else {
+                // 반복: 원본을 한 번 펼친 뒤 이미 채운 부분을 두 배씩 복사
+                Repeat p = (Repeat) r;
+                String unit = p.unit.toString();
+                int total = p.length();
+                unit.getChars(0, unit.length(), buf, off);
+                for(int filled = unit.length(); filled < total; filled *= 2)
+                    System.arraycopy(buf, off, buf, off + filled, Math.min(filled, total - filled));
+            }
+        }
+        return new String(buf);
+    }
+
+    private static final class Leaf extends Rope {
+        // 숫자 표기(10진, 16진, NaN, Infinity, 접미사)에 쓰이는 문자
+        private static final String NUMERIC_CHARS = "0123456789+-.eExXpPaAbBcCdDfFNIinty";
+
+        final String s;
+        private int numeric;  // 0: 아직 모름, 1: 숫자 문자만, -1: 다른 문자 있음
+
+        Leaf(String s) {
+            this.s = s;
+        }
+
+        public int length() {
+            return s.length();
+        }
+
+        boolean mayBeNumeric() {
+            if(numeric == 0) {
+                numeric = 1;
+                for(int i = 0; i < s.length(); i++)
+                    if(NUMERIC_CHARS.indexOf(s.charAt(i)) < 0 && s.charAt(i) > ' ') {
+                        numeric = -1;
+                        break;
+                    }
+            }
+            return numeric > 0;
+        }
+
+        public String toString() {
+            return s;
+        }
+    }
+
+    private static final class Concat extends Rope {
+        final Rope left, right;
+        private final int length;
+        private final boolean numeric;
+
+        Concat(Rope left, Rope right) {
+            this.left = left;
+            this.right = right;
+            this.length = left.length() + right.length();
+            this.numeric = left.mayBeNumeric() && right.mayBeNumeric();
+        }
+
+        public int length() {
+            return length;
+        }
+
+        boolean mayBeNumeric() {
+            return numeric;
+        }
+    }
+
+    private static final class Repeat extends Rope {
+        final Rope unit;
+        final int count;
+
+        Repeat(Rope unit, int count) {
+            this.unit = unit;
+            this.count = count;
+        }
+
+        public int length() {
+            return unit.length() * count;
+        }
+
+        boolean mayBeNumeric() {
+            return unit.mayBeNumeric();
+        }
+    }
+}
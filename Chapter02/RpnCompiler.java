@@ -0,0 +1,304 @@
+package com.company;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+   재귀 없이 수식을 후위 표기(RPN) 명령열로 바꾸는 연산자 우선순위 파서
+   (shunting-yard). Parser 의 재귀 하강 파서와 같은 문법과 같은 오류를
+   받아들이지만, 괄호와 연산자는 힙에 있는 스택에 쌓으므로 아무리 깊거나
+   긴 수식도 스레드 스택을 쓰지 않고 입력 길이에 비례하는 시간에 처리한다.
+
+   문법(Parser 와 같음)
+     식     = [변수 =] 합
+     합     = 곱 {(+|-) 곱}
+     곱     = 지수 {(*|/|%) 지수}
+     지수   = 단항 {^ 단항}          (오른쪽부터 묶임)
+     단항   = [+|-] 기본              (단항 연산자는 하나만)
+     기본   = ( 합 ) | 숫자 | 문자열 | 변수 | 함수( [합 {, 합}] )
+*/
+final class RpnCompiler {
+    // 연산자 스택의 표시(이항 연산자는 연산자 문자 그대로 쌓음)
+    private static final char GROUP = '(';  // 괄호
+    private static final char CALL = 'f';   // 함수 호출의 여는 괄호
+    private static final char NEG = 'n';    // 단항 -
+
+    private final Lexer lex;
+    private final SymbolTable symbols;
+    private final FunctionRegistry functions;
+
+    // 연산자 스택. 함수 호출 항목은 함수, 이름 위치, 지금까지의 쉼표 수를 함께 둔다
+    private char[] ops = new char[16];
+    private FunctionRegistry.Entry[] opFn = new FunctionRegistry.Entry[16];
+    private int[] opPos = new int[16];
+    private int[] opCommas = new int[16];
+    private int top;
+
+    // 출력 명령
+    private int[] code = new int[16];
+    private int[] operand = new int[16];
+    private int size;
+    private final ArrayList<Value> consts = new ArrayList<>();
+    private final ArrayList<FunctionRegistry.Entry> fns = new ArrayList<>();
+    private int depth, maxDepth;   // 계산 시 값 스택 깊이
+
+    private RpnCompiler(String expstr, SymbolTable symbols, FunctionRegistry functions) {
+        this.lex = new Lexer(expstr);
+        this.symbols = symbols;
+        this.functions = functions;
+    }
+
+    // 트리에서 명령열을 만들 때(파싱하지 않음)
+    private RpnCompiler() {
+        this.lex = null;
+        this.symbols = null;
+        this.functions = null;
+    }
+
+    // 오류가 있으면 오류 정보를 담은 RpnExpression 을 반환(예외 없음)
+    static RpnExpression compile(String expstr, SymbolTable symbols, FunctionRegistry functions) {
+        return new RpnCompiler(expstr, symbols, functions).run(expstr);
+    }
+
+    /* 이미 만든 수식 트리를 같은 명령열로 바꿈(Expression 이 스택을 넘칠 때 사용).
+       트리를 재귀하지 않고 따라가며, 노드를 계산하는 순서는 트리 계산과 같다. */
+    static RpnExpression compile(String source, Node root) {
+        RpnCompiler c = new RpnCompiler();
+
+        // 자식을 왼쪽부터 쌓으면 오른쪽 서브트리부터 나오므로 뒤집으면 후위 순서
+        ArrayList<Node> order = new ArrayList<>();
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while(!nodes.isEmpty()) {
+            Node n = nodes.pop();
+            order.add(n);
+            if(n.left != null) nodes.push(n.left);
+            if(n.right != null) nodes.push(n.right);
+            if(n.args != null)
+                for(Node a : n.args) nodes.push(a);
+        }
+
+        for(int i = order.size() - 1; i >= 0; i--) {
+            Node n = order.get(i);
+            switch(n.kind) {
+                case Node.CONST:
+                    c.consts.add(n.value);
+                    c.emit(RpnExpression.CONST, c.consts.size() - 1, 1);
+                    break;
+                case Node.VAR:
+                    c.emit(RpnExpression.VAR, n.slot, 1);
+                    break;
+                case Node.ASSIGN:
+                    c.emit(RpnExpression.ASSIGN, n.slot, 0);
+                    break;
+                case Node.NEG:
+                    c.emit(RpnExpression.NEG, 0, 0);
+                    break;
+                case Node.CALL:
+                    c.fns.add(n.fn);
+                    c.emit(RpnExpression.CALL, c.fns.size() - 1, 1 - n.args.length);
+                    break;
+                default:
+                    c.emitBinary(n.op);
+                    break;
+            }
+        }
+        return new RpnExpression(source, Arrays.copyOf(c.code, c.size), Arrays.copyOf(c.operand, c.size),
+                c.consts.toArray(new Value[0]), c.fns.toArray(new FunctionRegistry.Entry[0]), c.maxDepth);
+    }
+
+    private RpnExpression run(String expstr) {
+        if(lex.next() == Lexer.NONE && lex.error < 0)
+            lex.fail(Parser.NOEXP); // 표현식이 없음
+
+        // 맨 앞의 "변수 =" 는 할당
+        int assign = -1;
+        if(lex.type == Lexer.VARIABLE && lex.peek('=')) {
+            assign = findVar();
+            lex.next();
+            lex.next();
+        }
+
+        boolean expectOperand = true;  // 피연산자를 기다리는 상태인지
+        boolean afterUnary = false;    // 바로 앞이 단항 연산자인지
+
+        while(lex.error < 0) {
+            if(expectOperand) {
+                char op = lex.op();
+                if(!afterUnary && (op == '+' || op == '-')) {
+                    if(op == '-') push(NEG, null, 0);
+                    afterUnary = true;
+                    lex.next();
+                    continue;
+                }
+                afterUnary = false;
+
+                if(lex.is('(')) {
+                    push(GROUP, null, 0);
+                    lex.next();
+                    continue;
+                }
+                switch(lex.type) {
+                    case Lexer.NUMBER:
+                    case Lexer.STRING:
+                        consts.add(Value.of(lex.text()));
+                        emit(RpnExpression.CONST, consts.size() - 1, 1);
+                        lex.next();
+                        break;
+                    case Lexer.VARIABLE:
+                        if(lex.peek('(')) {   // 함수 호출
+                            FunctionRegistry.Entry fn = functions.lookup(lex.text());
+                            if(fn == null) {
+                                lex.fail(Parser.UNKNOWNFUNC);
+                                continue;
+                            }
+                            push(CALL, fn, lex.start);
+                            lex.next();     // (
+                            lex.next();
+                            if(lex.is(')'))  // 인자 없는 호출
+                                closeCall(0);
+                            continue;
+                        }
+                        emit(RpnExpression.VAR, findVar(), 1);
+                        lex.next();
+                        break;
+                    default:
+                        lex.fail(Parser.SYNTAX);
+                        continue;
+                }
+                primaryDone();
+                expectOperand = false;
+                continue;
+            }
+
+            char op = lex.op();
+            int p = precedence(op);
+            if(p > 0) {
+                // 우선순위가 높은(같으면 왼쪽부터 묶는) 연산자를 먼저 내보냄
+                while(top > 0) {
+                    int q = precedence(ops[top - 1]);
+                    if(q == 0 || q < p || (q == p && op == '^')) break;
+                    emitBinary(ops[--top]);
+                }
+                push(op, null, 0);
+                lex.next();
+                expectOperand = true;
+                continue;
+            }
+
+            // 괄호 안의 연산자를 모두 내보내고 가장 안쪽의 괄호를 찾음
+            while(top > 0 && precedence(ops[top - 1]) > 0)
+                emitBinary(ops[--top]);
+            char open = top > 0 ? ops[top - 1] : 0;
+
+            if(op == ')' && open == GROUP) {
+                top--;
+                lex.next();
+                primaryDone();
+            }
+            else if(op == ')' && open == CALL)
+                closeCall(opCommas[top - 1] + 1);
+            else if(op == ',' && open == CALL) {
+                opCommas[top - 1]++;
+                lex.next();
+                expectOperand = true;
+            }
+            else if(open != 0)
+                lex.fail(Parser.UNBALPARENS);  // 괄호 안에서 ) 가 아닌 토큰
+            else
+                break;                          // 최상위 식의 끝
+        }
+
+        if(lex.type != Lexer.NONE) // 문자열의 마지막 토큰은 EOE 여야 한다.
+            lex.fail(Parser.SYNTAX);
+        if(lex.error >= 0)
+            return RpnExpression.invalid(expstr, lex.error, lex.errorPos);
+
+        while(top > 0)
+            emitBinary(ops[--top]);
+        if(assign >= 0)
+            emit(RpnExpression.ASSIGN, assign, 0);
+
+        return new RpnExpression(expstr, Arrays.copyOf(code, size), Arrays.copyOf(operand, size),
+                consts.toArray(new Value[0]), fns.toArray(new FunctionRegistry.Entry[0]), maxDepth);
+    }
+
+    // 함수 호출의 ) 처리
+    private void closeCall(int argc) {
+        top--;
+        FunctionRegistry.Entry fn = opFn[top];
+        int at = opPos[top];
+        lex.next();
+        if(argc != fn.arity) {
+            lex.fail(Parser.ARGCOUNT, at);
+            return;
+        }
+        fns.add(fn);
+        emit(RpnExpression.CALL, fns.size() - 1, 1 - argc);
+        primaryDone();
+    }
+
+    // 기본 식 하나가 끝남: 바로 앞의 단항 - 적용
+    private void primaryDone() {
+        if(top > 0 && ops[top - 1] == NEG) {
+            top--;
+            emit(RpnExpression.NEG, 0, 0);
+        }
+    }
+
+    private int findVar() {
+        if(!Character.isLetter(lex.firstChar())) {
+            lex.fail(Parser.SYNTAX);
+            return 0;
+        }
+        int slot = symbols.trySlot(lex.text());
+        if(slot < 0) {
+            lex.fail(Parser.TOOMANYVARS);
+            return 0;
+        }
+        return slot;
+    }
+
+    // 이항 연산자 우선순위(연산자가 아니면 0)
+    private static int precedence(char op) {
+        switch(op) {
+            case '+': case '-': return 1;
+            case '*': case '/': case '%': return 2;
+            case '^': return 3;
+            default: return 0;
+        }
+    }
+
+    private void push(char op, FunctionRegistry.Entry fn, int pos) {
+        if(top == ops.length) {
+            int n = top * 2;
+            ops = Arrays.copyOf(ops, n);
+            opFn = Arrays.copyOf(opFn, n);
+            opPos = Arrays.copyOf(opPos, n);
+            opCommas = Arrays.copyOf(opCommas, n);
+        }
+        ops[top] = op;
+        opFn[top] = fn;
+        opPos[top] = pos;
+        opCommas[top] = 0;
+        top++;
+    }
+
+    private void emitBinary(char op) {
+        emit(RpnExpression.BINARY, op, -1);
+    }
+
+    // 명령 추가. change 는 값 스택 깊이의 변화
+    private void emit(int instr, int arg, int change) {
+        if(size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+            operand = Arrays.copyOf(operand, size * 2);
+        }
+        code[size] = instr;
+        operand[size] = arg;
+        size++;
+        depth += change;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+}
@@ -0,0 +1,215 @@
+package com.company;
+
+import java.util.Arrays;
+
+/*
+   RpnCompiler 가 만든 후위 표기 명령열.
+   트리를 재귀로 따라가는 Expression 과 달리 값 스택 하나로 명령을
+   차례로 실행하므로 수식의 깊이와 관계없이 스레드 스택을 쓰지 않는다.
+   연산은 Expression 과 같은 Operators 메소드를 쓰므로 결과와 오류가 같다.
+*/
+final class RpnExpression {
+    // 명령
+    static final int CONST = 0;   // 상수(operand 는 상수 번호)
+    static final int VAR = 1;     // 변수(operand 는 슬롯)
+    static final int ASSIGN = 2;  // 스택 맨 위 값을 변수에 할당(operand 는 슬롯)
+    static final int NEG = 3;     // 단항 -
+    static final int BINARY = 4;  // 이항 연산(operand 는 연산자 문자)
+    static final int CALL = 5;    // 함수 호출(operand 는 함수 번호)
+
+    private final String source;
+    private final int[] code;
+    private final int[] operand;
+    private final Value[] consts;
+    private final FunctionRegistry.Entry[] fns;
+    private final int maxStack;       // 값 스택 최대 깊이
+    private final int errorCode;      // 파싱 오류 코드(올바른 수식이면 -1)
+    private final int errorPosition;
+
+    RpnExpression(String source, int[] code, int[] operand, Value[] consts,
+                  FunctionRegistry.Entry[] fns, int maxStack) {
+        this.source = source;
+        this.code = code;
+        this.operand = operand;
+        this.consts = consts;
+        this.fns = fns;
+        this.maxStack = maxStack;
+        this.errorCode = -1;
+        this.errorPosition = -1;
+    }
+
+    private RpnExpression(String source, int errorCode, int errorPosition) {
+        this.source = source;
+        this.code = null;
+        this.operand = null;
+        this.consts = null;
+        this.fns = null;
+        this.maxStack = 0;
+        this.errorCode = errorCode;
+        this.errorPosition = errorPosition;
+    }
+
+    static RpnExpression invalid(String source, int errorCode, int errorPosition) {
+        return new RpnExpression(source, errorCode, errorPosition);
+    }
+
+    boolean isInvalid() {
+        return errorCode >= 0;
+    }
+
+    int getErrorCode() {
+        return errorCode;
+    }
+
+    int getErrorPosition() {
+        return errorPosition;
+    }
+
+    String getSource() {
+        return source;
+    }
+
+    // 명령 수
+    int size() {
+        return code.length;
+    }
+
+    // 같은 수식의 트리 깊이(값 스택에 항목별 깊이를 쌓아 계산)
+    int depth() {
+        int[] stack = new int[maxStack];
+        int sp = 0, max = 0;
+        for(int pc = 0; pc < code.length; pc++) {
+            int d;
+            switch(code[pc]) {
+                case CONST:
+                case VAR:
+                    d = 1;
+                    break;
+                case BINARY:
+                    sp--;
+                    d = Math.max(stack[sp - 1], stack[sp]) + 1;
+                    sp--;
+                    break;
+                case CALL: {
+                    int n = fns[operand[pc]].arity;
+                    d = 0;
+                    for(int i = 0; i < n; i++) d = Math.max(d, stack[--sp]);
+                    d++;
+                    break;
+                }
+                default:    // NEG, ASSIGN
+                    d = stack[--sp] + 1;
+                    break;
+            }
+            stack[sp++] = d;
+            max = Math.max(max, d);
+        }
+        return max;
+    }
+
+    // 같은 수식의 트리(재귀 파서가 스택을 넘칠 때 Parser 가 사용)
+    Node toTree(SymbolTable symbols) {
+        Node[] stack = new Node[maxStack];
+        int sp = 0;
+        for(int pc = 0; pc < code.length; pc++) {
+            int a = operand[pc];
+            switch(code[pc]) {
+                case CONST:
+                    stack[sp++] = Node.constant(consts[a]);
+                    break;
+                case VAR:
+                    stack[sp++] = Node.var(a, symbols.name(a));
+                    break;
+                case ASSIGN:
+                    stack[sp - 1] = Node.assign(a, symbols.name(a), stack[sp - 1]);
+                    break;
+                case NEG:
+                    stack[sp - 1] = Node.neg(stack[sp - 1]);
+                    break;
+                case BINARY: {
+                    Node r = stack[--sp];
+                    stack[sp - 1] = Node.binary((char) a, stack[sp - 1], r);
+                    break;
+                }
+                default: {
+                    FunctionRegistry.Entry fn = fns[a];
+                    sp -= fn.arity;
+                    Node[] args = Arrays.copyOfRange(stack, sp, sp + fn.arity);
+                    stack[sp++] = Node.call(fn, args);
+                    break;
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    String evaluate(EvaluationContext ctx) throws ParserException
+    {
+        Value result = value(ctx);
+        if(!result.isNumber())    //결과 값이 문자열이면 큰따옴표 삽입
+            return "\""+result+"\"";
+        return result.toString();
+    }
+
+    // 계산 결과 값(따옴표를 붙이지 않음)
+    Value value(EvaluationContext ctx) throws ParserException
+    {
+        if(isInvalid())
+            Parser.handleErr(errorCode, errorPosition);
+
+        Value[] stack = new Value[maxStack];
+        int sp = 0;
+        for(int pc = 0; pc < code.length; pc++) {
+            int a = operand[pc];
+            switch(code[pc]) {
+                case CONST:
+                    stack[sp++] = consts[a];
+                    break;
+                case VAR:
+                    stack[sp++] = ctx.get(a);
+                    break;
+                case ASSIGN:
+                    ctx.set(a, stack[sp - 1]);
+                    break;
+                case NEG:
+                    stack[sp - 1] = Operators.neg(stack[sp - 1]);
+                    break;
+                case BINARY: {
+                    Value r = stack[--sp];
+                    Value l = stack[sp - 1];
+                    stack[sp - 1] = a == '^' ? Operators.pow(l, r, ctx.isExactPowers())
+                            : Operators.apply((char) a, l, r, ctx.getMaxStringLength());
+                    break;
+                }
+                default: {
+                    FunctionRegistry.Entry fn = fns[a];
+                    sp -= fn.arity;
+                    Value result;
+                    if(fn.arity == 1) result = fn.apply(stack[sp]);
+                    else if(fn.arity == 2) result = fn.apply(stack[sp], stack[sp + 1]);
+                    else result = fn.apply(Arrays.copyOfRange(stack, sp, sp + fn.arity));
+                    stack[sp++] = result;
+                    break;
+                }
+            }
+        }
+
+        return stack[0];
+    }
+
+    // 예외 대신 결과 또는 오류를 반환
+    EvalResult tryEvaluate(EvaluationContext ctx)
+    {
+        if(isInvalid())
+            return EvalResult.error(errorCode, errorPosition);
+        try {
+            return EvalResult.ok(evaluate(ctx));
+        } catch(ParserException exc) {
+            return EvalResult.error(exc.getCode(), exc.getPosition());
+        }
+    }
+
+    public String toString() {
+        return source;
+    }
+}
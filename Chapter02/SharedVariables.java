@@ -0,0 +1,43 @@
+package com.company;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+   여러 EvaluationContext 가 함께 쓰는 변수 저장소.
+   슬롯마다 원자적으로 읽고 쓰므로 잠금이 필요 없다.
+   슬롯은 PAGE 개씩 묶은 페이지에 저장하고, 페이지는 처음 쓸 때
+   compareAndSet 으로 붙이므로 변수가 늘어나도 잠그거나 복사하지 않는다.
+*/
+final class SharedVariables {
+    private static final int PAGE_BITS = 6;
+    private static final int PAGE = 1 << PAGE_BITS;   // 페이지 하나의 슬롯 수
+    private static final int MAX_PAGES = 1 << 12;     // 최대 슬롯 수는 PAGE * MAX_PAGES
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Value>> pages =
+            new AtomicReferenceArray<>(MAX_PAGES);
+
+    Value get(int slot) {
+        AtomicReferenceArray<Value> page = pages.get(slot >>> PAGE_BITS);
+        return page != null ? page.get(slot & (PAGE - 1)) : null;
+    }
+
+    void set(int slot, Value v) {
+        page(slot).set(slot & (PAGE - 1), v);
+    }
+
+    // 기대한 값일 때만 바꿈(다른 스레드와 경쟁하는 갱신용)
+    boolean compareAndSet(int slot, Value expect, Value update) {
+        return page(slot).compareAndSet(slot & (PAGE - 1), expect, update);
+    }
+
+    // 슬롯이 들어 있는 페이지(없으면 만들어 붙임)
+    private AtomicReferenceArray<Value> page(int slot) {
+        int p = slot >>> PAGE_BITS;
+        AtomicReferenceArray<Value> page = pages.get(p);
+        if(page == null) {
+            AtomicReferenceArray<Value> created = new AtomicReferenceArray<>(PAGE);
+            page = pages.compareAndSet(p, null, created) ? created : pages.get(p);
+        }
+        return page;
+    }
+}
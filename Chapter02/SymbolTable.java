@@ -0,0 +1,78 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+   변수 이름과 슬롯 번호의 대응표.
+   수식을 파싱할 때 변수 이름마다 0부터 차례로 슬롯을 하나씩 붙이고,
+   계산할 때는 슬롯 번호로 배열에 바로 접근하므로 이름을 찾지 않는다.
+   이름은 대소문자를 구분하지 않는다(price 와 PRICE 는 같은 변수).
+   한 Parser 의 모든 수식과 EvaluationContext 가 같은 표를 공유한다.
+   setLimit()로 슬롯 수를 제한할 수 있다(믿을 수 없는 입력을 받는 서버).
+*/
+final class SymbolTable {
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];  // 슬롯별 이름
+    private volatile int size;
+    private volatile int limit = Integer.MAX_VALUE;     // 최대 슬롯 수
+
+    // 최대 슬롯 수(이미 붙인 슬롯은 그대로 둠)
+    void setLimit(int limit) {
+        if(limit <= 0)
+            throw new IllegalArgumentException("limit must be positive");
+        this.limit = limit;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    // 이름의 슬롯(처음 보는 이름이면 새 슬롯을 붙임)
+    int slot(String name) {
+        int s = trySlot(name);
+        if(s < 0)
+            throw new IllegalStateException("too many variables (limit " + limit + ")");
+        return s;
+    }
+
+    // slot()과 같지만 슬롯 수 제한에 걸리면 -1
+    int trySlot(String name) {
+        String key = name.toUpperCase(Locale.ROOT);
+        Integer s = slots.get(key);
+        if(s != null) return s;
+
+        synchronized(this) {
+            s = slots.get(key);
+            if(s != null) return s;
+            int n = size;
+            if(n >= limit) return -1;
+            String[] a = names;
+            if(n == a.length)
+                names = a = Arrays.copyOf(a, n * 2);
+            a[n] = key;
+            size = n + 1;   // 이름을 채운 뒤 크기를 늘려야 name()이 null 을 보지 않음
+            slots.put(key, n);
+            return n;
+        }
+    }
+
+    // 이름의 슬롯(없으면 -1)
+    int find(String name) {
+        Integer s = slots.get(name.toUpperCase(Locale.ROOT));
+        return s != null ? s : -1;
+    }
+
+    // 슬롯의 이름(대문자)
+    String name(int slot) {
+        if(slot < 0 || slot >= size)
+            throw new IndexOutOfBoundsException("no variable in slot " + slot);
+        return names[slot];
+    }
+
+    // 지금까지 붙인 슬롯 수
+    int size() {
+        return size;
+    }
+}
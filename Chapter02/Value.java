@@ -0,0 +1,145 @@
+package com.company;
+/*
+   수식 계산 중에 오가는 값.
+   숫자는 double 그대로, 문자열은 Rope 로 들고 다니므로
+   연산마다 Double.toString/parseDouble 을 반복하지 않고,
+   문자열 연결과 반복도 결과를 출력할 때까지 복사하지 않는다.
+*/
+final class Value {
+    static final Value ZERO = new Value(0.0, null, null); // 값이 할당되지 않은 변수
+
+    private final double num;   // 숫자 값
+    private final Rope str;     // 문자열 값(숫자이면 null)
+    private final String text;  // 숫자의 원래 표기(계산 결과이면 null)
+
+    private Value(double num, Rope str, String text) {
+        this.num = num;
+        this.str = str;
+        this.text = text;
+    }
+
+    // 계산 결과 숫자
+    static Value number(double num) {
+        return new Value(num, null, null);
+    }
+
+    // 원래 표기를 유지하는 숫자(상수, 숫자 모양의 문자열)
+    static Value number(double num, String text) {
+        return new Value(num, null, text);
+    }
+
+    // 문자열 값. 숫자로 읽을 수 있는 문자열은 숫자로 취급한다.
+    static Value of(String s) {
+        if(isNumeric(s))
+            return new Value(Double.parseDouble(s), null, s);
+        return new Value(0.0, Rope.of(s), null);
+    }
+
+    static Value of(Rope r) {
+        if(r.mayBeNumeric() && isNumeric(r)) {
+            String s = r.toString();
+            return new Value(Double.parseDouble(s), null, s);
+        }
+        return new Value(0.0, r, null);
+    }
+
+    boolean isNumber() {
+        return str == null;
+    }
+
+    double num() {
+        return num;
+    }
+
+    // 숫자의 원래 표기(계산 결과이거나 문자열이면 null)
+    String text() {
+        return text;
+    }
+
+    // 문자열로 쓸 때의 값(숫자는 출력 표기)
+    Rope rope() {
+        return str != null ? str : Rope.of(toString());
+    }
+
+    // 문자열로 쓸 때의 길이(펼치지 않고 계산)
+    int length() {
+        return str != null ? str.length() : toString().length();
+    }
+
+    public String toString() {
+        if(str != null) return str.toString();
+        return text != null ? text : Double.toString(num);
+    }
+
+    /* Double.parseDouble 이 받아들이는 형식인지 검사.
+       예외를 던지지 않고 문법만 확인한다. */
+    static boolean isNumeric(CharSequence s) {
+        int len = s.length();
+        int i = 0;
+
+        // 앞뒤 공백은 parseDouble 과 같이 무시
+        while(i < len && s.charAt(i) <= ' ') i++;
+        while(len > i && s.charAt(len - 1) <= ' ') len--;
+        if(i == len) return false;
+
+        char c = s.charAt(i);
+        if(c == '+' || c == '-') i++;
+
+        if(matches(s, i, len, "NaN") || matches(s, i, len, "Infinity"))
+            return true;
+
+        // 끝의 타입 접미사(f, F, d, D)
+        c = s.charAt(len - 1);
+        if(c == 'f' || c == 'F' || c == 'd' || c == 'D') len--;
+
+        if(len - i > 2 && s.charAt(i) == '0' &&
+                (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X'))
+            return isHexFloat(s, i + 2, len);
+        return isDecimal(s, i, len);
+    }
+
+    private static boolean matches(CharSequence s, int from, int to, String word) {
+        if(to - from != word.length()) return false;
+        for(int k = 0; k < word.length(); k++)
+            if(s.charAt(from + k) != word.charAt(k)) return false;
+        return true;
+    }
+
+    // 정수부[.소수부][e[+-]지수]
+    private static boolean isDecimal(CharSequence s, int i, int len) {
+        int digits = 0;
+        while(i < len && isDigit(s.charAt(i))) { i++; digits++; }
+        if(i < len && s.charAt(i) == '.') {
+            i++;
+            while(i < len && isDigit(s.charAt(i))) { i++; digits++; }
+        }
+        if(digits == 0) return false;
+        if(i < len && (s.charAt(i) == 'e' || s.charAt(i) == 'E'))
+            return isExponent(s, i + 1, len);
+        return i == len;
+    }
+
+    // 0x 이후: 16진 가수[.16진 소수부]p[+-]지수
+    private static boolean isHexFloat(CharSequence s, int i, int len) {
+        int digits = 0;
+        while(i < len && Character.digit(s.charAt(i), 16) >= 0) { i++; digits++; }
+        if(i < len && s.charAt(i) == '.') {
+            i++;
+            while(i < len && Character.digit(s.charAt(i), 16) >= 0) { i++; digits++; }
+        }
+        if(digits == 0 || i == len) return false;
+        if(s.charAt(i) != 'p' && s.charAt(i) != 'P') return false;
+        return isExponent(s, i + 1, len);
+    }
+
+    private static boolean isExponent(CharSequence s, int i, int len) {
+        if(i < len && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+        if(i == len) return false;
+        while(i < len && isDigit(s.charAt(i))) i++;
+        return i == len;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
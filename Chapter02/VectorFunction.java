@@ -0,0 +1,7 @@
+package com.company;
+
+// 숫자 수식 여러 개를 한 번에 계산해 out 에 차례로 쓰는 함수(BytecodeCompiler.compile(Expression[]))
+@FunctionalInterface
+interface VectorFunction {
+    void apply(double[] vars, double[] out) throws ParserException;
+}
@@ -0,0 +1,172 @@
+package com.company;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+   Parser.evaluate() 성능 측정용 JMH 벤치마크.
+   처리량(ops/us)과 평균 시간(us/op)을 함께 재고, GC 프로파일러로
+   연산당 할당량(gc.alloc.rate.norm)도 출력한다.
+
+   cached=false 이면 매번 토큰 분석, 파싱, 최적화, 계산을 모두 하고,
+   cached=true 이면 ExpressionCache 에서 컴파일된 수식을 꺼내 계산만 한다.
+   상수만 있는 수식은 최적화 단계에서 CONST 하나로 접히므로 입력에는
+   setup 에서 값을 넣어 둔 변수를 써서 계산 경로가 실제로 측정되게 한다.
+
+   실행 방법(jmh-core, jmh-generator-annprocess 와 그 의존성 jar 를 lib 에 둠):
+     javac -cp "lib/*" -d out Chapter02/*.java Chapter02/bench/ParserBenchmark.java
+     java -cp "out:lib/*" com.company.ParserBenchmark
+   특정 벤치마크만 실행하거나 JMH 옵션을 바꾸려면
+     java -cp "out:lib/*" org.openjdk.jmh.Main ParserBenchmark.pow -prof gc -bm avgt
+*/
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({ "false", "true" })
+    boolean cached;
+
+    private Parser parser;
+    private EvaluationContext ctx;
+
+    private final String numeric = "A + 4 * B - 7 / B % 3 + 10 * (6 - C)";
+    private String deepParens;      // ((((...A + B...))))
+    private String longPlusChain;   // A + 2 + ... + 1000
+    private final String pow = "B ^ 3 ^ B + D ^ 1000 + B ^ 0.5";
+    private final String concat = "S + \"def\" + 123 + \"ghi\"";
+    private final String repeat = "S * N";
+    private final String replace = "T - \"b\"";
+    private final String assign = "A = 3 * 4 + 1";
+    private final String functions = "sqrt(A) + max(A, 2) * abs(-A) + round(A / 3)";
+    private final String divByZero = "1 + 2 / 0";
+    private final String syntaxError = "1 + * 2";
+
+    @Setup
+    public void setup() throws ParserException {
+        parser = cached ? new Parser(new ExpressionCache(64)) : new Parser();
+        ctx = parser.newContext();
+        parser.evaluate("A = 3", ctx);
+        parser.evaluate("B = 2", ctx);
+        parser.evaluate("C = 1.5", ctx);
+        parser.evaluate("D = 1.0001", ctx);
+        parser.evaluate("N = 100", ctx);
+        parser.evaluate("S = \"abc\"", ctx);
+        parser.evaluate("T = \"abcabcabcabc\"", ctx);
+
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 200; i++) sb.append('(');
+        sb.append("A + B");
+        for(int i = 0; i < 200; i++) sb.append(')');
+        deepParens = sb.toString();
+
+        sb.setLength(0);
+        sb.append('A');
+        for(int i = 2; i <= 1000; i++) sb.append(" + ").append(i);
+        longPlusChain = sb.toString();
+    }
+
+    @Benchmark
+    public String numeric() throws ParserException {
+        return parser.evaluate(numeric, ctx);
+    }
+
+    @Benchmark
+    public String deepParens() throws ParserException {
+        return parser.evaluate(deepParens, ctx);
+    }
+
+    @Benchmark
+    public String longPlusChain() throws ParserException {
+        return parser.evaluate(longPlusChain, ctx);
+    }
+
+    @Benchmark
+    public String pow() throws ParserException {
+        return parser.evaluate(pow, ctx);
+    }
+
+    @Benchmark
+    public String stringConcat() throws ParserException {
+        return parser.evaluate(concat, ctx);
+    }
+
+    @Benchmark
+    public String stringRepeat() throws ParserException {
+        return parser.evaluate(repeat, ctx);
+    }
+
+    @Benchmark
+    public String stringReplace() throws ParserException {
+        return parser.evaluate(replace, ctx);
+    }
+
+    // evalExp1 의 할당 경로
+    @Benchmark
+    public String assignment() throws ParserException {
+        return parser.evaluate(assign, ctx);
+    }
+
+    // 파싱할 때 찾아 둔 함수 호출
+    @Benchmark
+    public String functions() throws ParserException {
+        return parser.evaluate(functions, ctx);
+    }
+
+    // 오류 경로: 실행 중 ParserException 을 던지는 비용
+    @Benchmark
+    public String divisionByZero() {
+        try {
+            return parser.evaluate(divByZero, ctx);
+        } catch(ParserException exc) {
+            return exc.toString();
+        }
+    }
+
+    // 오류 경로: 파싱 중 ParserException 을 던지는 비용(cached 이면 오류도 캐시됨)
+    @Benchmark
+    public String syntaxError() {
+        try {
+            return parser.evaluate(syntaxError, ctx);
+        } catch(ParserException exc) {
+            return exc.toString();
+        }
+    }
+
+    // 오류 경로: 예외 없이 오류 결과를 받는 비용
+    @Benchmark
+    public EvalResult syntaxErrorTry() {
+        return parser.tryEvaluate(syntaxError, ctx);
+    }
+
+    @Benchmark
+    public EvalResult divisionByZeroTry() {
+        return parser.tryEvaluate(divByZero, ctx);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
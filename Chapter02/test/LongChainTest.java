@@ -0,0 +1,42 @@
+package com.company;
+
+/*
+   아주 긴 연산 체인(1+1+...+1)의 회귀 테스트.
+   왼쪽으로만 깊어지는 트리를 Optimizer 와 트리 계산이 재귀하지 않고
+   처리하는지, 최적화를 켜고 끈 두 경우 모두 올바른 값을 내는지 확인한다.
+
+   실행 방법:
+     javac -d out Chapter02/*.java Chapter02/test/LongChainTest.java
+     java -cp out com.company.LongChainTest
+*/
+public class LongChainTest {
+    private static final int TERMS = 20_000;
+
+    public static void main(String[] args) throws ParserException {
+        for(boolean optimize : new boolean[] { false, true }) {
+            Parser parser = new Parser(null, optimize);
+            EvaluationContext ctx = parser.newContext();
+            parser.evaluate("A = 1", ctx);
+
+            check(parser.evaluate(chain("1", " + 1"), ctx), "20000.0", optimize);
+            check(parser.evaluate(chain("A", " + A"), ctx), "20000.0", optimize);
+            check(parser.evaluate(chain("0", " - A * 2 + 3"), ctx), "19999.0", optimize);
+            check(parser.evaluate("B = " + chain("A", " + 1") + " - 0", ctx), "20000.0", optimize);
+            check(parser.evaluate(chain("1", " + 1"), ctx, new Budget(TERMS * 4, 1024, TERMS * 2, 0)),
+                    "20000.0", optimize);
+        }
+        System.out.println("OK");
+    }
+
+    // first 뒤에 term 을 TERMS - 1 번 붙인 수식
+    private static String chain(String first, String term) {
+        StringBuilder sb = new StringBuilder(first);
+        for(int i = 1; i < TERMS; i++) sb.append(term);
+        return sb.toString();
+    }
+
+    private static void check(String actual, String expected, boolean optimize) {
+        if(!actual.equals(expected))
+            throw new AssertionError("optimize=" + optimize + ": expected " + expected + " but was " + actual);
+    }
+}
@@ -105,12 +105,35 @@ class SBasic {
     };
 
     private char[] prog; // 프로그램 배열 참조
-    private int progIdx; // 현재 프로그램 인덱스(인터프리터가 작업중인 위치)
+    private int progIdx; // 다음에 읽을 토큰 번호(인터프리터가 작업중인 위치)
 
     private String token; // 현재 토큰의 문자열 버전
     private int tokType;  // 토큰 타입
 
     private int kwToken; // 키워드의 내부 표현
+    private int tokIdx;  // 현재 토큰 번호(putBack 에서 사용)
+    private char tokOp;  // 현재 토큰이 연산자이면 그 문자, 아니면 0
+
+    /* 프로그램을 읽을 때 한 번 만드는 토큰열.
+       i 번째 토큰의 정보를 각 배열의 i 번째에 저장한다. 실행 중에는
+       문자 배열을 다시 분석하지 않고 토큰 번호만 따라간다.
+       같은 문자열은 하나의 String 객체를 쓰고, 숫자는 미리 double 로,
+       키워드는 내부 표현으로 바꾸어 둔다. */
+    private int tokCount;     // 만든 토큰 수
+    private int[] tType;      // 토큰 타입
+    private int[] tKw;        // 키워드 내부 표현
+    private char[] tOp;       // 연산자 토큰의 문자(아니면 0)
+    private String[] tText;   // 토큰 문자열
+    private double[] tNum;    // 숫자 토큰의 값
+    private boolean[] tBadNum;// 숫자로 바꿀 수 없는 숫자 토큰(계산할 때 오류)
+    private int[] tVar;       // 변수 인덱스(글자로 시작하는 토큰)
+    private int[] tErr;       // 읽을 때 낼 오류(-1 이면 없음)
+    private int[] tStart;     // 토큰을 찾기 시작한 소스 위치(앞의 공백 포함)
+    private int[] tEnd;       // 토큰 다음의 소스 위치
+    private int[] tNext;      // 다음 토큰 번호(-1 이면 아직 만들지 않음)
+    private int[] tEol;       // findEOL()로 이동할 토큰 번호(-1 이면 아직 모름)
+    private HashMap<Integer, Integer> tokenAt; // 소스 위치 -> 그 위치에서 찾은 토큰 번호
+    private HashMap<String, String> names;     // 같은 토큰 문자열을 하나로 모음
 
     // ForInfo 객체에 FOR 루프의 정보를 저장
     class ForInfo {
@@ -144,6 +167,80 @@ class SBasic {
     // gosubs를 위한 스택
     private Stack gStack;
 
+    // 컴파일된 문장 종류
+    final int ST_NOP = 0;       // 빈 줄, 레이블 등 아무것도 하지 않는 토큰
+    final int ST_ASSIGN = 1;
+    final int ST_PRINT = 2;
+    final int ST_GOTO = 3;
+    final int ST_IF = 4;
+    final int ST_FOR = 5;
+    final int ST_NEXT = 6;
+    final int ST_INPUT = 7;
+    final int ST_GOSUB = 8;
+    final int ST_RETURN = 9;
+    final int ST_END = 10;
+    final int ST_REPEAT = 11;
+    final int ST_UNTIL = 12;
+    final int ST_ERR = 13;      // 실행하면 err 오류
+
+    // 수식 트리 노드 종류
+    final int X_NUM = 0;
+    final int X_VAR = 1;
+    final int X_NEG = 2;
+    final int X_BIN = 3;
+    final int X_ERR = 4;        // left 를 계산한 뒤 var 오류
+
+    // PRINT 항목 종류
+    final int P_STR = 0;
+    final int P_NUM = 1;
+    final int P_TAB = 2;        // 쉼표
+    final int P_SPACE = 3;      // 세미콜론
+    final int P_NEWLINE = 4;
+    final int P_ERR = 5;        // exp 를 계산하면 오류
+
+    // 수식 트리의 노드
+    class Expr {
+        int kind;
+        char op;        // X_BIN 의 연산자
+        double value;   // X_NUM 의 값
+        int var;        // X_VAR 의 변수 인덱스, X_ERR 의 오류
+        Expr left, right;
+
+        Expr(int k) {
+            kind = k;
+        }
+    }
+
+    // 컴파일된 문장. 위치는 모두 토큰 번호이고 -1 이면 프로그램 종료
+    class Stmt {
+        int kind;
+        int var;            // 변수 인덱스
+        Expr exp;           // 할당 값, 조건식, FOR 의 초기값
+        Expr target;        // FOR 의 목표값
+        int next;           // 다음 문장(IF 는 조건이 참일 때)
+        int alt;            // IF 가 거짓일 때, FOR 루프를 건너뛸 때의 위치
+        int loc;            // FOR 루프의 시작 위치, GOSUB 의 리턴될 위치
+        int tok;            // FOR 의 목표값 다음 토큰
+        int err = -1;       // 실행 중 낼 오류
+        String text;        // INPUT 프롬프트
+        PrintItem[] items;  // PRINT 항목
+    }
+
+    // PRINT 항목
+    class PrintItem {
+        int kind;
+        Expr exp;
+        String text;
+
+        PrintItem(int k, Expr e) {
+            kind = k;
+            exp = e;
+        }
+    }
+
+    private Stmt[] code;    // 문장이 시작하는 토큰 번호 -> 컴파일된 문장
+    private boolean failed; // 컴파일 중인 수식에 오류가 있음
+
     // 관계연산자
     char rops[] = {
             GE, NE, LE, '<', '>', '=', 0
@@ -168,6 +265,8 @@ class SBasic {
 
             // 프로그램을 프로그램 배열(prog)로 복사
             System.arraycopy(tempbuf, 0, prog, 0, size);
+
+            tokenize(); // 토큰열 생성
         }
     }
 
@@ -206,6 +305,7 @@ class SBasic {
         rStack=new Stack();
         labelTable = new TreeMap();
         gStack = new Stack();
+        code = new Stmt[tokCount];
         progIdx = 0;
 
         scanLabels(); // 프로그램 내에서 모든 레이블 검색
@@ -215,53 +315,106 @@ class SBasic {
     }
 
     // Small Basic 인터프리터의 진입점
+    /* 문장은 처음 실행할 때 한 번만 Stmt 로 컴파일하고(compileStmt),
+       그 뒤로는 토큰을 다시 읽지 않고 컴파일된 문장만 실행한다.
+       pc 는 문장이 시작하는 토큰 번호이며 -1 이면 프로그램 종료. */
     private void sbInterp() throws InterpreterException
     {
+        int pc = 0;
+        Stmt s;
+        ForInfo f;
+        ReInfo r;
 
         // 인터프리터의 메인 루프
-        do {
-            getToken();
-            // 할당 구문 검사
-            if(tokType==VARIABLE) {
-                putBack(); // 입력스트림에 var 리턴
-                assignment(); // 할당 구문 처리
+        while(pc >= 0) {
+            if(pc >= code.length || (s = code[pc]) == null)
+                s = compile(pc);
+
+            switch(s.kind) {
+                case ST_NOP:
+                    pc = s.next;
+                    break;
+                case ST_ASSIGN:
+                    vars[s.var] = eval(s.exp);
+                    pc = s.next;
+                    break;
+                case ST_PRINT:
+                    print(s);
+                    pc = s.next;
+                    break;
+                case ST_GOTO:
+                    pc = s.next;
+                    break;
+                case ST_IF:
+                    if(eval(s.exp) != 0.0) {
+                        if(s.err >= 0) handleErr(s.err);
+                        pc = s.next;
+                    }
+                    else pc = s.alt;
+                    break;
+                case ST_FOR:
+                    pc = execFor(s);
+                    break;
+                case ST_NEXT:
+                    try {
+                        // 현재 For 루프를 위한 정보 검색
+                        f = (ForInfo) fStack.peek();
+                        vars[f.var]++; // 컨트롤 변수
+
+                        // 목표값을 넘어서면 종료, 아니면 루프의 시작 위치로 이동
+                        if(vars[f.var] > f.target) {
+                            fStack.pop();
+                            pc = s.next;
+                        }
+                        else pc = f.loc;
+                    } catch(EmptyStackException exc) {
+                        handleErr(NEXTWITHOUTFOR);
+                    }
+                    break;
+                case ST_INPUT:
+                    input(s);
+                    pc = s.next;
+                    break;
+                case ST_GOSUB:
+                    // 리턴될 위치 저장(GOSUB 구문 다음)
+                    gStack.push(new Integer(s.loc));
+                    pc = s.next;
+                    break;
+                case ST_RETURN:
+                    try {
+                        // 저장했던 리턴될 위치를 꺼냄
+                        pc = ((Integer) gStack.pop()).intValue();
+                    } catch(EmptyStackException exc) {
+                        handleErr(RETURNWITHOUTGOSUB);
+                    }
+                    break;
+                case ST_END:
+                    return; //sbInterp() 종료
+                case ST_REPEAT:
+                    r = new ReInfo();
+                    r.loc = s.next;  //루프의 시작 위치 저장
+                    rStack.push(r);
+                    pc = s.next;
+                    break;
+                case ST_UNTIL:
+                    try {
+                        // REPEAT 루프에 대한 정보 검색
+                        r = (ReInfo) rStack.pop();
+                        if(eval(s.exp) != 0.0) //조건식이 참이면 루프 종료
+                            pc = s.next;
+                        else {
+                            rStack.push(r);
+                            // 조건식이 프로그램 끝에서 끝나면 그대로 종료
+                            pc = s.next < 0 ? -1 : r.loc;
+                        }
+                    } catch(EmptyStackException exc) {
+                        handleErr(NEXTWITHOUTFOR);
+                    }
+                    break;
+                default: // ST_ERR
+                    handleErr(s.err);
             }
-            else // 키워드
-                switch(kwToken) {
-                    case PRINT:
-                        print();
-                        break;
-                    case GOTO:
-                        execGoto();
-                        break;
-                    case IF:
-                        execIf();
-                        break;
-                    case FOR:
-                        execFor();
-                        break;
-                    case NEXT:
-                        next();
-                        break;
-                    case INPUT:
-                        input();
-                        break;
-                    case GOSUB:
-                        gosub();
-                        break;
-                    case RETURN:
-                        greturn();
-                        break;
-                    case END:
-                        return; //sbInterp() 종료
-                    case REPEAT:
-                        repeat();
-                        break;
-                    case UNTIL:
-                        until();
-                        break;
-                }
-        } while (!token.equals(EOP));
+        }
     }
 
     // 모든 레이블 검색
@@ -291,222 +444,393 @@ class SBasic {
 
             // 공백 줄이 아니면 다음 줄 검색
             if(kwToken != EOL) findEOL();
-        } while(!token.equals(EOP));
+        } while(token != EOP);
         progIdx = 0; // reset index to start of program
     }
 
     // 다음 줄의 시작점 검색
     private void findEOL()
     {
-        while(progIdx < prog.length &&
-                prog[progIdx] != '\n') ++progIdx;
-        if(progIdx < prog.length) progIdx++;
+        int i = progIdx;
+
+        if(tEol[i] < 0) {
+            // 소스에서 다음 줄의 시작 위치를 찾아 그 위치의 토큰과 연결해 둠
+            int p = tStart[i];
+            while(p < prog.length && prog[p] != '\n') ++p;
+            if(p < prog.length) p++;
+            tEol[i] = lex(p);
+        }
+        progIdx = tEol[i];
     }
 
-    // 변수에 값 할당
-    private void assignment() throws InterpreterException
+    // **************** Compiler ****************
+
+    /* pc 에서 시작하는 문장을 컴파일해 code 에 저장.
+       원래 인터프리터가 문장을 실행하며 토큰을 읽던 순서 그대로 읽으므로
+       실행 후의 위치(next)와 오류가 나는 지점이 같다. 오류는 컴파일할 때
+       내지 않고, 실행 중 그 지점에 도달하면 내도록 문장과 수식에 넣어 둔다. */
+    private Stmt compile(int pc)
     {
-        int var;
-        double value;
-        char vname;
+        Stmt s = new Stmt();
+        int err;
 
-        // 변수 이름 얻음
-        getToken();
-        vname = token.charAt(0);
+        if(pc >= code.length)
+            code = Arrays.copyOf(code, Math.max(pc + 1, code.length * 2));
 
-        if(!Character.isLetter(vname)) {
-            handleErr(NOTVAR);
-            return;
+        failed = false;
+        progIdx = pc;
+        if((err = readToken()) >= 0) {
+            s.kind = ST_ERR;
+            s.err = err;
         }
+        // 할당 구문 검사
+        else if(tokType==VARIABLE) {
+            putBack(); // 입력스트림에 var 리턴
+            compileAssignment(s); // 할당 구문 처리
+        }
+        else // 키워드
+            switch(kwToken) {
+                case PRINT:
+                    compilePrint(s);
+                    break;
+                case GOTO:
+                case GOSUB:
+                    compileGoto(s);
+                    break;
+                case IF:
+                    compileIf(s);
+                    break;
+                case FOR:
+                    compileFor(s);
+                    break;
+                case NEXT:
+                    s.kind = ST_NEXT;
+                    break;
+                case INPUT:
+                    compileInput(s);
+                    break;
+                case RETURN:
+                    s.kind = ST_RETURN;
+                    break;
+                case END:
+                    s.kind = ST_END;
+                    break;
+                case REPEAT:
+                    s.kind = ST_REPEAT;
+                    break;
+                case UNTIL:
+                    s.kind = ST_UNTIL;
+                    s.exp = compileExp(); // 관계식
+                    break;
+                default: // 빈 줄, 레이블 등
+                    s.kind = ST_NOP;
+            }
 
-        var = (int) Character.toUpperCase(vname) - 'A';
+        // 마지막으로 읽은 토큰이 프로그램의 끝이면 실행 종료
+        if(s.kind != ST_GOTO && s.kind != ST_GOSUB)
+            s.next = token == EOP ? -1 : progIdx;
+        code[pc] = s;
+        return s;
+    }
+
+    // 변수에 값 할당
+    private void compileAssignment(Stmt s)
+    {
+        int err;
+
+        // 변수 이름 얻음
+        readToken();
+        s.var = (int) Character.toUpperCase(token.charAt(0)) - 'A';
 
         // 등호를 얻음
-        getToken();
-        if(!token.equals("=")) {
-            handleErr(EQUALEXPECTED);
+        if((err = readToken()) >= 0 || tokOp != '=') {
+            s.kind = ST_ERR;
+            s.err = err >= 0 ? err : EQUALEXPECTED;
             return;
         }
 
         // 할당할 값을 얻음
-        value = evaluate();
-
-        // 값 할당
-        vars[var] = value;
+        s.kind = ST_ASSIGN;
+        s.exp = compileExp();
     }
 
-    //  PRINT 구문의 간단한 버전 실행
-    private void print() throws InterpreterException
+    /* PRINT 구문. 항목을 출력하는 순서와 오류가 나는 지점을
+       PrintItem 배열로 만든다 */
+    private void compilePrint(Stmt s)
     {
-        double result;
-        int len=0, spaces;
+        ArrayList<PrintItem> items = new ArrayList<>();
+        Expr e;
         String lastDelim = "";
+        int err;
 
+        s.kind = ST_PRINT;
         do {
-            getToken(); // 다음 리스트 아이템을 얻음
-            if(kwToken==EOL || token.equals(EOP)) break;
+            // 다음 리스트 아이템을 얻음
+            if((err = readToken()) >= 0) {
+                items.add(new PrintItem(P_ERR, fail(err, null)));
+                break;
+            }
+            if(kwToken==EOL || token == EOP) break;
 
             if(tokType==QUOTEDSTR) { // 문자열
-                System.out.print(token);
-                len += token.length();
-                getToken();
+                PrintItem str = new PrintItem(P_STR, null);
+                str.text = token;
+                items.add(str);
+                if((err = readToken()) >= 0) {
+                    items.add(new PrintItem(P_ERR, fail(err, null)));
+                    break;
+                }
             }
             else { // 수식
                 putBack();
-                result = evaluate();
-                getToken();
-                System.out.print(result);
-
-                // 현재 합계에 결과 길이를 더함
-                Double t = new Double(result);
-                len += t.toString().length(); // 길이 저장
+                e = compileExp();
+                // 수식 다음 토큰을 읽은 뒤 출력한다
+                if(!failed && (err = readToken()) >= 0)
+                    e = fail(err, e);
+                if(failed) {
+                    items.add(new PrintItem(P_ERR, e));
+                    break;
+                }
+                items.add(new PrintItem(P_NUM, e));
             }
             lastDelim = token;
 
             // 쉼표이면 다음 탭으로 이동
-            if(lastDelim.equals(",")) {
-                // 다음 탭으로 이동하기 위해 공백 수 계산
-                spaces = 8 - (len % 8);
-                len += spaces; // 탭 위치에 추가
-                while(spaces != 0) {
-                    System.out.print(" ");
-                    spaces--;
-                }
-            }
-            else if(token.equals(";")) {
-                System.out.print(" ");
-                len++;
+            if(lastDelim.equals(","))
+                items.add(new PrintItem(P_TAB, null));
+            else if(token.equals(";"))
+                items.add(new PrintItem(P_SPACE, null));
+            else if(kwToken != EOL && token != EOP) {
+                items.add(new PrintItem(P_ERR, fail(SYNTAX, null)));
+                break;
             }
-            else if(kwToken != EOL && !token.equals(EOP))
-                handleErr(SYNTAX);
         } while (lastDelim.equals(";") || lastDelim.equals(","));
 
-        if(kwToken==EOL || token.equals(EOP)) {
-            if(!lastDelim.equals(";") && !lastDelim.equals(","))
-                System.out.println();
+        if(!failed) {
+            if(kwToken==EOL || token == EOP) {
+                if(!lastDelim.equals(";") && !lastDelim.equals(","))
+                    items.add(new PrintItem(P_NEWLINE, null));
+            }
+            else items.add(new PrintItem(P_ERR, fail(SYNTAX, null)));
         }
-        else handleErr(SYNTAX);
+        s.items = items.toArray(new PrintItem[items.size()]);
     }
 
-    // GOTO 구문 실행
-    private void execGoto() throws InterpreterException
+    // GOTO, GOSUB 구문. 레이블 위치를 미리 찾아 둠
+    private void compileGoto(Stmt s)
     {
         Integer loc;
+        int err;
+
+        s.kind = kwToken == GOTO ? ST_GOTO : ST_GOSUB;
 
-        getToken(); // 이동할 레이블을 얻음
+        // 이동할 레이블을 얻음
+        if((err = readToken()) >= 0) {
+            s.kind = ST_ERR;
+            s.err = err;
+            return;
+        }
 
         // labelTable에서 레이블의 위치를 검색
         loc = (Integer) labelTable.get(token);
 
-        if(loc == null)
-            handleErr(UNDEFLABEL); // 정의되지 않은 레이블
-        else // loc에서 프로그램 실행 시작
-            progIdx = loc.intValue();
+        if(loc == null) {
+            s.kind = ST_ERR;
+            s.err = UNDEFLABEL; // 정의되지 않은 레이블
+        }
+        else {
+            s.loc = progIdx; // GOSUB 의 리턴될 위치
+            s.next = loc.intValue();
+        }
     }
 
-    // IF 구문 실행
-    private void execIf() throws InterpreterException
+    // IF 구문
+    private void compileIf(Stmt s)
     {
-        double result;
+        int err;
 
-        result = evaluate(); // 관계수식의 값 얻음
+        s.kind = ST_IF;
+        s.exp = compileExp(); // 관계수식
+        if(failed) return;
 
-    /* 결과가 참인 경우(0이 아님), IF의 목표를 실행하고
-       그렇지 않으면, 프로그램의 다음 줄로 이동 */
-        if(result != 0.0) {
-            getToken();
-            if(kwToken != THEN) {
-                handleErr(THENEXPECTED);
-                return;
-            }
+    /* 결과가 거짓이면 프로그램의 다음 줄로 이동하고,
+       참이면 THEN 을 읽은 뒤 IF의 목표를 실행 */
+        if(token == EOP) s.alt = -1;
+        else {
+            findEOL();
+            s.alt = progIdx;
+            putBack();
         }
-        else findEOL();
+        if((err = readToken()) >= 0)
+            s.err = err;
+        else if(kwToken != THEN)
+            s.err = THENEXPECTED;
     }
 
-    // FOR 루프 실행
-    private void execFor() throws InterpreterException
+    // FOR 구문
+    private void compileFor(Stmt s)
     {
-        ForInfo stckvar = new ForInfo();
-        double value;
-        char vname;
-
-        getToken(); // 제어 변수 읽음
-        vname = token.charAt(0);
-        if(!Character.isLetter(vname)) {
-            handleErr(NOTVAR);
+        int err;
+
+        // 제어 변수 읽음
+        if((err = readToken()) < 0 && !Character.isLetter(token.charAt(0)))
+            err = NOTVAR;
+        if(err >= 0) {
+            s.kind = ST_ERR;
+            s.err = err;
             return;
         }
 
         // 제어 변수의 인덱스 저장
-        stckvar.var = Character.toUpperCase(vname) - 'A';
+        s.var = Character.toUpperCase(token.charAt(0)) - 'A';
+
+        // 등호 읽음
+        if((err = readToken()) < 0 && token.charAt(0) != '=')
+            err = EQUALEXPECTED;
+        if(err >= 0) {
+            s.kind = ST_ERR;
+            s.err = err;
+            return;
+        }
+
+        s.kind = ST_FOR;
+        s.exp = compileExp(); // 초기값
+        if(failed) return;
+
+        // TO 읽고 버림. 오류는 초기값을 할당한 뒤에 냄
+        if((err = readToken()) >= 0 || kwToken != TO) {
+            s.err = err >= 0 ? err : TOEXPECTED;
+            return;
+        }
+
+        s.target = compileExp(); // 목표값
+        if(failed) return;
+
+        s.loc = progIdx; //루프의 시작 위치
+        s.alt = -1;      // 루프를 건너뛸 위치는 필요할 때 찾음
+        s.tok = tokIdx;
+    }
+
+    // 간단한 형태의 INPUT
+    private void compileInput(Stmt s)
+    {
+        int err;
 
-        getToken(); // 등호 읽음
-        if(token.charAt(0) != '=') {
-            handleErr(EQUALEXPECTED);
+        // 프롬프트 문자열이 존재하는지 확인
+        if((err = readToken()) >= 0) {
+            s.kind = ST_ERR;
+            s.err = err;
             return;
         }
 
-        value = evaluate(); // 초기값 얻음
+        s.kind = ST_INPUT;
+        if(tokType == QUOTEDSTR) {
+            // 있다면 출력 후 쉼표 검사. 오류는 출력한 뒤에 냄
+            s.text = token;
+            if((err = readToken()) < 0 && !token.equals(","))
+                err = SYNTAX;
+            if(err < 0) err = readToken();
+            if(err >= 0) {
+                s.err = err;
+                return;
+            }
+        }
+        else s.text = "? "; // 그렇지 않다면 ? 출력
 
-        vars[stckvar.var] = value;
+        // var 값 얻음
+        s.var =  Character.toUpperCase(token.charAt(0)) - 'A';
+    }
+
+    // **************** Statements ****************
 
-        getToken(); // TO 읽고 버림
-        if(kwToken != TO) handleErr(TOEXPECTED);
+    //  PRINT 구문의 간단한 버전 실행
+    private void print(Stmt s) throws InterpreterException
+    {
+        PrintItem[] items = s.items;
+        double result;
+        int len=0, spaces;
 
-        stckvar.target = evaluate(); // 목표값 얻음
+        for(int i = 0; i < items.length; i++) {
+            PrintItem p = items[i];
+            switch(p.kind) {
+                case P_STR: // 문자열
+                    System.out.print(p.text);
+                    len += p.text.length();
+                    break;
+                case P_NUM: // 수식
+                    result = eval(p.exp);
+                    System.out.print(result);
 
-    /* 루프가 최소한 한 번 실행될 수 있으면 스택에 정보 저장 */
-        if(value >= vars[stckvar.var]) {
-            stckvar.loc = progIdx;  //루프의 시작 위치 저장
-            fStack.push(stckvar);
+                    // 현재 합계에 결과 길이를 더함
+                    Double t = new Double(result);
+                    len += t.toString().length(); // 길이 저장
+                    break;
+                case P_TAB:
+                    // 다음 탭으로 이동하기 위해 공백 수 계산
+                    spaces = 8 - (len % 8);
+                    len += spaces; // 탭 위치에 추가
+                    while(spaces != 0) {
+                        System.out.print(" ");
+                        spaces--;
+                    }
+                    break;
+                case P_SPACE:
+                    System.out.print(" ");
+                    len++;
+                    break;
+                case P_NEWLINE:
+                    System.out.println();
+                    break;
+                default: // P_ERR
+                    eval(p.exp);
+            }
         }
-        else // 루프 코드를 빠져나감
-            while(kwToken != NEXT) getToken();
     }
 
-    // NEXT 구문 실행
-    private void next() throws InterpreterException
+    // FOR 루프 실행. 다음에 실행할 문장의 위치를 리턴
+    private int execFor(Stmt s) throws InterpreterException
     {
         ForInfo stckvar;
+        double value;
 
-        try {
-            // 현재 For 루프를 위한 정보 검색
-            stckvar = (ForInfo) fStack.pop();
-            vars[stckvar.var]++; // 컨트롤 변수
+        value = eval(s.exp); // 초기값 얻음
+
+        vars[s.var] = value;
+
+        if(s.err >= 0) handleErr(s.err);
 
-            // 목표값을 넘어서면 종료
-            if(vars[stckvar.var] > stckvar.target) return;
+        stckvar = new ForInfo();
+        stckvar.var = s.var;
+        stckvar.target = eval(s.target); // 목표값 얻음
 
-            // 그렇지 않으면 정보를 다시 스택에 저장
+    /* 루프가 최소한 한 번 실행될 수 있으면 스택에 정보 저장 */
+        if(value >= vars[stckvar.var]) {
+            stckvar.loc = s.loc;  //루프의 시작 위치 저장
             fStack.push(stckvar);
-            progIdx = stckvar.loc;  // 루프의 시작 위치로 이동
-            } catch(EmptyStackException exc) {
-            handleErr(NEXTWITHOUTFOR);
+            return s.next;
         }
+
+        // 루프 코드를 빠져나감(NEXT 다음 위치는 처음 한 번만 찾음)
+        if(s.alt < 0) {
+            progIdx = s.loc;
+            kwToken = tKw[s.tok];
+            while(kwToken != NEXT) getToken();
+            s.alt = progIdx;
+        }
+        return s.alt;
     }
 
     // 간단한 형태의 INPUT 실행
-    private void input() throws InterpreterException
+    private void input(Stmt s) throws InterpreterException
     {
-        int var;
         double val = 0.0;
         String str;
 
         BufferedReader br = new
                 BufferedReader(new InputStreamReader(System.in));
 
-        getToken(); // 프롬프트 문자열이 존재하는지 확인
-        if(tokType == QUOTEDSTR) {
-            // 있다면 출력 후 쉼표 검사
-            System.out.print(token);
-            getToken();
-            if(!token.equals(",")) handleErr(SYNTAX);
-            getToken();
-        }
-        else System.out.print("? "); // 그렇지 않다면 ? 출력
-
-        // var 값 얻음
-        var =  Character.toUpperCase(token.charAt(0)) - 'A';
+        System.out.print(s.text); // 프롬프트
+        if(s.err >= 0) handleErr(s.err);
 
         try {
             str = br.readLine();
@@ -520,292 +844,261 @@ class SBasic {
             System.out.println("Invalid input.");
         }
 
-        vars[var] = val; // store it
-    }
-
-    // GOSUB 실행
-    private void gosub() throws InterpreterException
-    {
-        Integer loc;
-
-        getToken();
-
-        // 호출할 레이블을 찾음
-        loc = (Integer) labelTable.get(token);
-
-        if(loc == null)
-            handleErr(UNDEFLABEL); // 정의되지 않은 레이블
-        else {
-            // 리턴될 위치 저장(GOSUB 구문 다음줄을 의미함).
-            gStack.push(new Integer(progIdx));
-
-            // loc에 저장된 위치에서 프로그램 실행을 시작
-            progIdx = loc.intValue();
-        }
-    }
-
-    // GOSUB에서 리턴
-    private void greturn() throws InterpreterException
-    {
-        Integer t;
-
-        try {
-            // 프로그램 인덱스 복구(저장했던 리턴될 위치를 꺼냄)
-            t = (Integer) gStack.pop();
-            progIdx = t.intValue();
-        } catch(EmptyStackException exc) {
-            handleErr(RETURNWITHOUTGOSUB);
-        }
-
+        vars[s.var] = val; // store it
     }
 
-    // REPEAT 실행
-    private void repeat() throws InterpreterException{
-        ReInfo stckvar = new ReInfo();
+    // **************** Expression Compiler ****************
 
-        stckvar.loc = progIdx;  //루프의 시작 위치 저장
-        rStack.push(stckvar);
-    }
-
-    // UNTIL
-    private void until() throws InterpreterException{
-        ReInfo stckvar;
-        double result;
-        try {
-            // REPEAT 루프에 대한 정보 검색
-            stckvar = (ReInfo) rStack.pop();
-            result=evaluate();  //관계식 계산
-
-            if(result!= 0.0) return; //조건식이 참이면 루프 종료
-            // 그렇지 않으면 정보를 다시 스택에 저장
-            rStack.push(stckvar);
-            progIdx = stckvar.loc;  // 루프의 시작 위치로 이동
-        } catch(EmptyStackException exc) {
-            handleErr(NEXTWITHOUTFOR);
-        }
-    }
-
-    // **************** Expression Parser ****************
+    /* 수식을 트리로 만든다. 오류가 나면 failed 를 켜고 그 지점에
+       오류 노드를 넣는다. 트리는 왼쪽부터 모든 노드를 계산하므로
+       오류 노드 앞의 계산(0으로 나누기 등)이 원래처럼 먼저 실행된다. */
 
     // Parser entry point.
-    private double evaluate() throws InterpreterException
+    private Expr compileExp()
     {
-        double result = 0.0;
+        Expr result;
+        int err;
 
-        getToken();
-        if(token.equals(EOP))
-            handleErr(NOEXP); // no expression present
+        if((err = readToken()) >= 0)
+            return fail(err, null);
+        if(token == EOP)
+            return fail(NOEXP, null); // no expression present
 
-        // Parse and evaluate the expression.
-        result = evalExp1();
+        // Parse the expression.
+        result = compExp1();
 
-        putBack();
+        if(!failed) putBack();
 
         return result;
     }
 
     // Process relational operators.
-    private double evalExp1() throws InterpreterException
+    private Expr compExp1()
     {
-        double l_temp, r_temp, result;
+        Expr result;
         char op;
+        int err;
 
-        result = evalExp2();
-        // If at end of program, return.
-        if(token.equals(EOP)) return result;
+        result = compExp2();
+        if(failed) return result;
 
-        op = token.charAt(0);
+        op = tokOp; // 연산자가 아니거나 프로그램의 끝이면 0
 
-        if(isRelop(op)) {
-            l_temp = result;
-            getToken();
-            r_temp = evalExp1();
-            switch(op) { // perform the relational operation
-                case '<':
-                    if(l_temp < r_temp) result = 1.0;
-                    else result = 0.0;
-                    break;
-                case LE:
-                    if(l_temp <= r_temp) result = 1.0;
-                    else result = 0.0;
-                    break;
-                case '>':
-                    if(l_temp > r_temp) result = 1.0;
-                    else result = 0.0;
-                    break;
-                case GE:
-                    if(l_temp >= r_temp) result = 1.0;
-                    else result = 0.0;
-                    break;
-                case '=':
-                    if(l_temp == r_temp) result = 1.0;
-                    else result = 0.0;
-                    break;
-                case NE:
-                    if(l_temp != r_temp) result = 1.0;
-                    else result = 0.0;
-                    break;
-            }
+        if(op != 0 && isRelop(op)) {
+            if((err = readToken()) >= 0)
+                return fail(err, result);
+            result = binary(op, result, compExp1());
         }
         return result;
     }
 
     // Add or subtract two terms.
-    private double evalExp2() throws InterpreterException
+    private Expr compExp2()
     {
         char op;
-        double result;
-        double partialResult;
+        Expr result;
+        int err;
 
-        result = evalExp3();
+        result = compExp3();
 
-        while((op = token.charAt(0)) == '+' || op == '-') {
-            getToken();
-            partialResult = evalExp3();
-            switch(op) {
-                case '-':
-                    result = result - partialResult;
-                    break;
-                case '+':
-                    result = result + partialResult;
-                    break;
-            }
+        while(!failed && ((op = tokOp) == '+' || op == '-')) {
+            if((err = readToken()) >= 0)
+                return fail(err, result);
+            result = binary(op, result, compExp3());
         }
         return result;
     }
 
     // Multiply or divide two factors.
-    private double evalExp3() throws InterpreterException
+    private Expr compExp3()
     {
         char op;
-        double result;
-        double partialResult;
+        Expr result;
+        int err;
 
-        result = evalExp4();
+        result = compExp4();
 
-        while((op = token.charAt(0)) == '*' ||
-                op == '/' || op == '%') {
-            getToken();
-            partialResult = evalExp4();
-            switch(op) {
-                case '*':
-                    result = result * partialResult;
-                    break;
-                case '/':
-                    if(partialResult == 0.0)
-                        handleErr(DIVBYZERO);
-                    result = result / partialResult;
-                    break;
-                case '%':
-                    if(partialResult == 0.0)
-                        handleErr(DIVBYZERO);
-                    result = result % partialResult;
-                    break;
-            }
+        while(!failed && ((op = tokOp) == '*' ||
+                op == '/' || op == '%')) {
+            if((err = readToken()) >= 0)
+                return fail(err, result);
+            result = binary(op, result, compExp4());
         }
         return result;
     }
 
     // Process an exponent.
-    private double evalExp4() throws InterpreterException
+    private Expr compExp4()
     {
-        double result;
-        double partialResult;
-        double ex;
-        int t;
+        Expr result;
+        int err;
 
-        result = evalExp5();
+        result = compExp5();
 
-        if(token.equals("^")) {
-            getToken();
-            partialResult = evalExp4();
-            ex = result;
-            if(partialResult == 0.0) {
-                result = 1.0;
-            } else
-                for(t=(int)partialResult-1; t > 0; t--)
-                    result = result * ex;
+        if(!failed && tokOp == '^') {
+            if((err = readToken()) >= 0)
+                return fail(err, result);
+            result = binary('^', result, compExp4());
         }
         return result;
     }
 
     // Evaluate a unary + or -.
-    private double evalExp5() throws InterpreterException
+    private Expr compExp5()
     {
-        double result;
-        String  op;
+        Expr result;
+        char op;
+        int err;
 
-        op = "";
-        if((tokType == DELIMITER) &&
-                token.equals("+") || token.equals("-")) {
-            op = token;
-            getToken();
+        op = 0;
+        if(tokOp == '+' || tokOp == '-') {
+            op = tokOp;
+            if((err = readToken()) >= 0)
+                return fail(err, null);
         }
-        result = evalExp6();
+        result = compExp6();
 
-        if(op.equals("-")) result = -result;
+        if(op == '-') {
+            Expr e = new Expr(X_NEG);
+            e.left = result;
+            result = e;
+        }
 
         return result;
     }
 
     // Process a parenthesized expression.
-    private double evalExp6() throws InterpreterException
+    private Expr compExp6()
     {
-        double result;
-
-        if(token.equals("(")) {
-            getToken();
-            result = evalExp2();
-            if(!token.equals(")"))
-                handleErr(UNBALPARENS);
-            getToken();
+        Expr result;
+        int err;
+
+        if(tokOp == '(') {
+            if((err = readToken()) >= 0)
+                return fail(err, null);
+            result = compExp2();
+            if(failed) return result;
+            if(tokOp != ')')
+                return fail(UNBALPARENS, result);
+            if((err = readToken()) >= 0)
+                return fail(err, result);
         }
         else result = atom();
 
         return result;
     }
 
-    // Get the value of a number or variable.
-    private double atom() throws InterpreterException
+    // Get a number or variable.
+    private Expr atom()
     {
-        double result = 0.0;
+        Expr result;
+        int err;
 
         switch(tokType) {
             case NUMBER:
-                try {
-                    result = Double.parseDouble(token);
-                } catch (NumberFormatException exc) {
-                    handleErr(SYNTAX);
-                }
-                getToken();
+                if(tBadNum[tokIdx]) return fail(SYNTAX, null);
+                result = new Expr(X_NUM);
+                result.value = tNum[tokIdx];
                 break;
             case VARIABLE:
-                result = findVar(token);
-                getToken();
+                if(tVar[tokIdx] == -1) return fail(SYNTAX, null);
+                result = new Expr(X_VAR);
+                result.var = tVar[tokIdx];
                 break;
             default:
-                handleErr(SYNTAX);
-                break;
+                return fail(SYNTAX, null);
         }
+        if((err = readToken()) >= 0)
+            return fail(err, result);
         return result;
     }
 
-    // Return the value of a variable.
-    private double findVar(String vname)
-            throws InterpreterException
+    // 이항 연산 노드
+    private Expr binary(char op, Expr left, Expr right)
+    {
+        Expr e = new Expr(X_BIN);
+        e.op = op;
+        e.left = left;
+        e.right = right;
+        return e;
+    }
+
+    /* 실행할 때 error 오류를 내는 노드. before 가 있으면 먼저 계산한다.
+       수식 컴파일을 멈추도록 failed 를 켬 */
+    private Expr fail(int error, Expr before)
+    {
+        Expr e = new Expr(X_ERR);
+        e.var = error;
+        e.left = before;
+        failed = true;
+        return e;
+    }
+
+    // 수식 트리 계산
+    private double eval(Expr e) throws InterpreterException
     {
-        if(!Character.isLetter(vname.charAt(0))){
-            handleErr(SYNTAX);
-            return 0.0;
+        double l_temp, r_temp, result, ex;
+        int t;
+
+        switch(e.kind) {
+            case X_NUM:
+                return e.value;
+            case X_VAR:
+                return vars[e.var];
+            case X_NEG:
+                return -eval(e.left);
+            case X_ERR:
+                if(e.left != null) eval(e.left);
+                handleErr(e.var);
+                return 0.0;
+        }
+
+        l_temp = eval(e.left);
+        r_temp = eval(e.right);
+        switch(e.op) {
+            case '+':
+                return l_temp + r_temp;
+            case '-':
+                return l_temp - r_temp;
+            case '*':
+                return l_temp * r_temp;
+            case '/':
+                if(r_temp == 0.0)
+                    handleErr(DIVBYZERO);
+                return l_temp / r_temp;
+            case '%':
+                if(r_temp == 0.0)
+                    handleErr(DIVBYZERO);
+                return l_temp % r_temp;
+            case '^':
+                result = l_temp;
+                ex = result;
+                if(r_temp == 0.0) {
+                    result = 1.0;
+                } else
+                    for(t=(int)r_temp-1; t > 0; t--)
+                        result = result * ex;
+                return result;
+            case '<':
+                return l_temp < r_temp ? 1.0 : 0.0;
+            case LE:
+                return l_temp <= r_temp ? 1.0 : 0.0;
+            case '>':
+                return l_temp > r_temp ? 1.0 : 0.0;
+            case GE:
+                return l_temp >= r_temp ? 1.0 : 0.0;
+            case '=':
+                return l_temp == r_temp ? 1.0 : 0.0;
+            default: // NE
+                return l_temp != r_temp ? 1.0 : 0.0;
         }
-        return vars[Character.toUpperCase(vname.charAt(0))-'A'];
     }
 
     // Return a token to the input stream.
     private void putBack()
     {
         if(token == EOP) return;
-        for(int i=0; i < token.length(); i++) progIdx--;
+        progIdx = tokIdx;
     }
 
     // Handle an error.
@@ -835,118 +1128,246 @@ class SBasic {
         throw new InterpreterException(err[error]);
     }
 
-    // 다음 토큰을 읽음
+    // 다음 토큰을 읽음(토큰열에서 가져오기만 함)
     private void getToken() throws InterpreterException
     {
-        char ch;
+        int err = readToken();
+
+        if(err >= 0) handleErr(err);
+    }
 
-        tokType = NONE;
-        token = "";
-        kwToken = UNKNCOM;
+    /* 다음 토큰을 읽고, 읽을 때 내야 할 오류가 있으면 그 코드를 리턴
+       (-1 이면 정상). 오류가 있으면 위치는 그대로 */
+    private int readToken()
+    {
+        int i = progIdx;
+
+        tokIdx = i;
+        tokType = tType[i];
+        token = tText[i];
+        kwToken = tKw[i];
+        tokOp = tOp[i];
+        if(tErr[i] >= 0) return tErr[i];
+
+        progIdx = next(i);
+        return -1;
+    }
+
+    // i 번째 토큰 다음 토큰의 번호
+    private int next(int i)
+    {
+        if(tNext[i] < 0) {
+            // 위치가 바뀌지 않는 토큰(프로그램의 끝)은 자기 자신을 반복
+            if(tEnd[i] == tStart[i]) tNext[i] = i;
+            else tNext[i] = lex(tEnd[i]);
+        }
+        return tNext[i];
+    }
+
+    /* 프로그램 전체의 토큰열 생성.
+       처음부터 차례로 만들고, findEOL()이 그 밖의 위치로 이동하면
+       그때 그 위치에서부터 더 만든다. 분석 오류는 바로 내지 않고
+       토큰에 기록해 두었다가 실행 중 그 토큰을 읽을 때 낸다. */
+    private void tokenize()
+    {
+        int i, n;
+
+        tokCount = 0;
+        tType = new int[256];
+        tKw = new int[256];
+        tOp = new char[256];
+        tText = new String[256];
+        tNum = new double[256];
+        tBadNum = new boolean[256];
+        tVar = new int[256];
+        tErr = new int[256];
+        tStart = new int[256];
+        tEnd = new int[256];
+        tNext = new int[256];
+        tEol = new int[256];
+        tokenAt = new HashMap<>();
+        names = new HashMap<>();
+        names.put(EOP, EOP); // 토큰 문자열이 EOP 와 같은지는 == 로 비교
+
+        i = lex(0); // 0 번 토큰이 프로그램의 시작
+        while(tErr[i] < 0 && (n = next(i)) != i) i = n;
+    }
+
+    // 새 토큰 번호를 만들고 기본값으로 채움
+    private int newToken(int start)
+    {
+        int i = tokCount++;
+
+        if(i == tType.length) {
+            int len = i * 2;
+            tType = Arrays.copyOf(tType, len);
+            tKw = Arrays.copyOf(tKw, len);
+            tOp = Arrays.copyOf(tOp, len);
+            tText = Arrays.copyOf(tText, len);
+            tNum = Arrays.copyOf(tNum, len);
+            tBadNum = Arrays.copyOf(tBadNum, len);
+            tVar = Arrays.copyOf(tVar, len);
+            tErr = Arrays.copyOf(tErr, len);
+            tStart = Arrays.copyOf(tStart, len);
+            tEnd = Arrays.copyOf(tEnd, len);
+            tNext = Arrays.copyOf(tNext, len);
+            tEol = Arrays.copyOf(tEol, len);
+        }
+        tType[i] = NONE;
+        tKw[i] = UNKNCOM;
+        tOp[i] = 0;
+        tText[i] = "";
+        tVar[i] = -1;
+        tErr[i] = -1;
+        tStart[i] = start;
+        tEnd[i] = start;
+        tNext[i] = -1;
+        tEol[i] = -1;
+        tokenAt.put(start, i);
+        return i;
+    }
+
+    // 같은 문자열은 같은 객체로
+    private String intern(String s)
+    {
+        String t = names.putIfAbsent(s, s);
+        return t == null ? s : t;
+    }
+
+    // 소스 위치 pos 에서 토큰 하나를 분석해 그 번호를 리턴
+    private int lex(int pos)
+    {
+        Integer known = tokenAt.get(pos);
+        if(known != null) return known.intValue();
+
+        int i = newToken(pos);
+        StringBuilder sb;
+        char ch;
 
         // 프로그램의 끝인지 검사
-        if(progIdx == prog.length) {
-            token = EOP;
-            return;
+        if(pos == prog.length) {
+            tText[i] = EOP;
+            return i;
         }
 
         // 공백 건너뜀
-        while(progIdx < prog.length &&
-                isSpaceOrTab(prog[progIdx])) progIdx++;
+        while(pos < prog.length &&
+                isSpaceOrTab(prog[pos])) pos++;
+        tEnd[i] = pos;
 
         // 프로그램의 뒤에 공백문자가 붙어 있으면 종료
-        if(progIdx == prog.length) {
-            token = EOP;
-            tokType = DELIMITER;
-            return;
+        if(pos == prog.length) {
+            tText[i] = EOP;
+            tType[i] = DELIMITER;
+            return i;
         }
 
-        if(prog[progIdx] == '\r') { // 줄바꿈 문자 처리
-            progIdx += 2;
-            kwToken = EOL;
-            token = "\r\n";
-            return;
+        if(prog[pos] == '\r') { // 줄바꿈 문자 처리
+            tEnd[i] = Math.min(pos + 2, prog.length);
+            tKw[i] = EOL;
+            tText[i] = "\r\n";
+            return i;
         }
 
         // 관계 연산자에 대한 검사
-        ch = prog[progIdx];
+        ch = prog[pos];
         if(ch == '<' || ch == '>') {
-            if(progIdx+1 == prog.length) handleErr(SYNTAX);
+            if(pos+1 == prog.length) {
+                tErr[i] = SYNTAX;
+                return i;
+            }
 
+            String op;
             switch(ch) {
                 case '<':
-                    if(prog[progIdx+1] == '>') {    //같지 않다는 연산자
-                        progIdx += 2;;
-                        token = String.valueOf(NE);
+                    if(prog[pos+1] == '>') {    //같지 않다는 연산자
+                        pos += 2;
+                        op = String.valueOf(NE);
                     }
-                    else if(prog[progIdx+1] == '=') {
-                        progIdx += 2;
-                        token = String.valueOf(LE);
+                    else if(prog[pos+1] == '=') {
+                        pos += 2;
+                        op = String.valueOf(LE);
                     }
                     else {
-                        progIdx++;
-                        token = "<";
+                        pos++;
+                        op = "<";
                     }
                     break;
-                case '>':
-                    if(prog[progIdx+1] == '=') {
-                        progIdx += 2;;
-                        token = String.valueOf(GE);
+                default:
+                    if(prog[pos+1] == '=') {
+                        pos += 2;
+                        op = String.valueOf(GE);
                     }
                     else {
-                        progIdx++;
-                        token = ">";
+                        pos++;
+                        op = ">";
                     }
                     break;
             }
-            tokType = DELIMITER;
-            return;
+            tText[i] = intern(op);
+            tType[i] = DELIMITER;
+            tOp[i] = op.charAt(0);
+            tEnd[i] = pos;
+            return i;
         }
 
-        if(isDelim(prog[progIdx])) {
+        sb = new StringBuilder();
+        if(isDelim(ch)) {
             //연산자
-            token += prog[progIdx];
-            progIdx++;
-            tokType = DELIMITER;
+            sb.append(ch);
+            pos++;
+            tType[i] = DELIMITER;
+            tOp[i] = ch;
         }
-        else if(Character.isLetter(prog[progIdx])) {
+        else if(Character.isLetter(ch)) {
             // 변수 또는 키워드
-            while(!isDelim(prog[progIdx])) {
-                token += prog[progIdx];
-                progIdx++;
-                if(progIdx >= prog.length) break;
+            while(!isDelim(prog[pos])) {
+                sb.append(prog[pos]);
+                pos++;
+                if(pos >= prog.length) break;
             }
 
-            kwToken = lookUp(token);
-            if(kwToken==UNKNCOM) tokType = VARIABLE;
-            else tokType = COMMAND;
+            tKw[i] = lookUp(sb.toString());
+            if(tKw[i]==UNKNCOM) tType[i] = VARIABLE;
+            else tType[i] = COMMAND;
+            tVar[i] = Character.toUpperCase(ch) - 'A';
         }
-        else if(Character.isDigit(prog[progIdx])) {
+        else if(Character.isDigit(ch)) {
             // 숫자
-            while(!isDelim(prog[progIdx])) {
-                token += prog[progIdx];
-                progIdx++;
-                if(progIdx >= prog.length) break;
+            while(!isDelim(prog[pos])) {
+                sb.append(prog[pos]);
+                pos++;
+                if(pos >= prog.length) break;
+            }
+            tType[i] = NUMBER;
+            try {
+                tNum[i] = Double.parseDouble(sb.toString());
+            } catch (NumberFormatException exc) {
+                tBadNum[i] = true;
             }
-            tokType = NUMBER;
         }
-        else if(prog[progIdx] == '"') {
+        else if(ch == '"') {
             // 인용부호가 있는 문자열
-            progIdx++;
-            ch = prog[progIdx];
-            while(ch !='"' && ch != '\r') {
-                token += ch;
-                progIdx++;
-                ch = prog[progIdx];
+            pos++;
+            while(pos < prog.length &&
+                    prog[pos] !='"' && prog[pos] != '\r') {
+                sb.append(prog[pos]);
+                pos++;
+            }
+            if(pos == prog.length || prog[pos] == '\r') {
+                tErr[i] = MISSINGQUOTE; //닫는 인용부호가 없음
+                return i;
             }
-            if(ch == '\r') handleErr(MISSINGQUOTE); //닫는 인용부호가 없음
-            progIdx++;
-            tokType = QUOTEDSTR;
+            pos++;
+            tType[i] = QUOTEDSTR;
         }
         else { // 정의되지 않은 문자인 경우 프로그램 종료
-            token = EOP;
-            return;
+            tText[i] = EOP;
+            return i;
         }
+        tText[i] = intern(sb.toString());
+        tEnd[i] = pos;
+        return i;
     }
 
     // Return true if c is a delimiter.